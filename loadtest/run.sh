@@ -0,0 +1,71 @@
+#!/usr/bin/env bash
+#
+# Load test of the metrics ingestion endpoints.
+# Start the server first (with the same MongoDB for every run), e.g.:
+#
+#   java -jar monitoring.jar --spring.threads.virtual.enabled=false \
+#     --management.metrics.distribution.percentiles.http.server.requests=0.5,0.99
+#
+# then run this script with a label for the mode under test:
+#
+#   loadtest/run.sh platform
+#
+# Restart the server with --spring.threads.virtual.enabled=true and run it again with another label.
+# For each scenario the hey report (requests/sec, latency distribution with p99) and the server-side
+# http.server.requests metrics are written to loadtest/results/<label>/.
+#
+# Environment: BASE_URL (default http://localhost:12050), DURATION (default 60s),
+# CONCURRENCY (default 500), HOSTS (distinct host names, default 100), BATCH_SIZE (default 100).
+
+set -euo pipefail
+
+LABEL=${1:?usage: $0 <label>}
+BASE_URL=${BASE_URL:-http://localhost:12050}
+DURATION=${DURATION:-60s}
+CONCURRENCY=${CONCURRENCY:-500}
+HOSTS=${HOSTS:-100}
+BATCH_SIZE=${BATCH_SIZE:-100}
+
+command -v hey >/dev/null || { echo "hey is required: https://github.com/rakyll/hey" >&2; exit 1; }
+command -v curl >/dev/null || { echo "curl is required" >&2; exit 1; }
+
+OUT="$(dirname "$0")/results/$LABEL"
+mkdir -p "$OUT"
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+sample() {
+  local i=$1
+  printf '{"hostname":"load-%d","ip":"10.0.%d.%d","timestamp":%d,"cpuUsage":%d,"diskUsage":%d,"ramUsage":%d}' \
+    "$((i % HOSTS))" "$((i % HOSTS / 256))" "$((i % HOSTS % 256))" "$(($(date +%s) * 1000))" \
+    "$((i % 100))" "$(((i * 7) % 100))" "$(((i * 13) % 100))"
+}
+
+sample 0 > "$WORK/single.json"
+{
+  printf '['
+  for ((i = 0; i < BATCH_SIZE; i++)); do
+    if ((i > 0)); then printf ","; fi
+    sample "$i"
+  done
+  printf ']'
+} > "$WORK/batch.json"
+
+# Server-side latency of one endpoint, from the actuator.
+server_metrics() {
+  curl -fsS "$BASE_URL/actuator/metrics/http.server.requests?tag=uri:$1&tag=method:POST" || echo '{}'
+}
+
+run() {
+  local name=$1 uri=$2 body=$3
+  echo "== $LABEL / $name: $DURATION, $CONCURRENCY connections"
+  hey -z "$DURATION" -c "$CONCURRENCY" -m POST -T application/json -D "$body" "$BASE_URL$uri" | tee "$OUT/$name.txt"
+  server_metrics "$uri" > "$OUT/$name-server.json"
+  # Samples rejected by the write-behind queue so far.
+  curl -fsS "$BASE_URL/actuator/metrics/cheetah.ingest.rejected" > "$OUT/$name-rejected.json" || true
+}
+
+run single /api/metrics "$WORK/single.json"
+run batch /api/metrics/batch "$WORK/batch.json"
+
+echo "Results written to $OUT"
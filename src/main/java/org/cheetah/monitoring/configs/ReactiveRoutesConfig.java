@@ -0,0 +1,34 @@
+package org.cheetah.monitoring.configs;
+
+import org.cheetah.monitoring.controllers.ReactiveIngestHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * Routes of the reactive profile (spring.profiles.active=reactive).
+ * Replaces the servlet-only MetricsController, AgentRegistrationController and ExternalAlertController;
+ * the multipart /api/external/alert/document upload has no reactive counterpart.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveRoutesConfig {
+
+    @Bean
+    public RouterFunction<ServerResponse> ingestRoutes(ReactiveIngestHandler handler) {
+        return RouterFunctions.route()
+                .POST("/api/metrics", handler::receiveMetrics)
+                .POST("/api/metrics/batch", handler::receiveMetricsBatch)
+                .GET("/api/metrics/latest", handler::getLatestMetrics)
+                .GET("/api/metrics/{hostname}", handler::getMetrics)
+                .POST("/api/agent/register", handler::registerAgent)
+                .POST("/api/agent/register/bulk", handler::registerAgents)
+                .POST("/api/external/apikey", handler::createApiKey)
+                .POST("/api/external/alert", handler::sendCustomAlert)
+                .build();
+    }
+}
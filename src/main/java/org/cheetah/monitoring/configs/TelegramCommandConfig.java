@@ -12,6 +12,9 @@ import jakarta.annotation.PostConstruct;
 @Component
 public class TelegramCommandConfig {
 
+    @Value("${telegram.api.base-url:https://api.telegram.org}")
+    private String baseUrl;
+
     @Value("${telegram.bot.token}")
     private String botToken;
 
@@ -34,12 +37,12 @@ public class TelegramCommandConfig {
      */
     @PostConstruct
     public void registerCommands() {
-        String url = "https://api.telegram.org/bot" + botToken + "/setMyCommands";
+        String url = baseUrl + "/bot" + botToken + "/setMyCommands";
         String body = String.format(
             "{\"commands\":[{\"command\":\"status\",\"description\":\"%s\"},"
           + "{\"command\":\"ports\",\"description\":\"%s\"},"
-          + "{\"command\":\"help\",\"description\":\"%s\"}]}"
-          + "{\"command\":\"list\",  \"description\":\"%s\"},",
+          + "{\"command\":\"help\",\"description\":\"%s\"},"
+          + "{\"command\":\"list\",\"description\":\"%s\"}]}",
             statusDesc, portsDesc, helpDesc,listDesc
         );
         Object obj = rest.postForObject(url, body, String.class);
@@ -1,7 +1,12 @@
 package org.cheetah.monitoring.controllers;
 
+import java.util.List;
+
 import org.cheetah.monitoring.model.AgentInfo;
+import org.cheetah.monitoring.model.dto.BulkRegistrationResponse;
 import org.cheetah.monitoring.services.AgentRegistrationService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -9,7 +14,12 @@ import org.springframework.web.bind.annotation.RestController;
 
 import lombok.AllArgsConstructor;
 
+/**
+ * REST Controller for agent registration.
+ * With the reactive profile the same endpoints are served by ReactiveIngestHandler.
+ */
 @RestController
+@ConditionalOnWebApplication(type = Type.SERVLET)
 @RequestMapping("/api/agent")
 @AllArgsConstructor
 public class AgentRegistrationController {
@@ -27,4 +37,15 @@ public class AgentRegistrationController {
     public AgentInfo registerAgent(@RequestBody AgentInfo agentInfo) {
         return agentRegistrationService.registerAgent(agentInfo);
     }
-}
\ No newline at end of file
+
+    /**
+     * Registers or updates many agents in one request, e.g. after a datacenter restart.
+     *
+     * @param agents The registration data of the agents.
+     * @return how many agents were inserted, updated or failed.
+     */
+    @PostMapping("/register/bulk")
+    public BulkRegistrationResponse registerAgents(@RequestBody List<AgentInfo> agents) {
+        return agentRegistrationService.registerAgents(agents);
+    }
+}
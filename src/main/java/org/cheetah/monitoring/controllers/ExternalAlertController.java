@@ -5,11 +5,16 @@ import org.cheetah.monitoring.model.dto.CreateApiKeyRequest;
 import org.cheetah.monitoring.model.dto.CustomAlertRequest;
 import org.cheetah.monitoring.services.AlertService;
 import org.cheetah.monitoring.services.ApiClientService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
@@ -18,8 +23,11 @@ import jakarta.validation.Valid;
 
 /**
  * Exposes endpoints for external systems to send custom Telegram alerts.
+ * With the reactive profile /apikey and /alert are served by ReactiveIngestHandler;
+ * the multipart /alert/document upload is only available on the servlet stack.
  */
 @RestController
+@ConditionalOnWebApplication(type = Type.SERVLET)
 @RequestMapping("/api/external")
 public class ExternalAlertController {
 
@@ -33,10 +41,15 @@ public class ExternalAlertController {
 
 	/**
 	 * Generate a new API key for an external application.
+	 * Answers 400 when the appName is missing or the optional rate limits are out of bounds.
 	 */
 	@PostMapping("/apikey")
-	public ResponseEntity<?> createApiKey(@Valid @RequestBody CreateApiKeyRequest req) {
-		var client = clientService.createClient(req.getAppName());
+	public ResponseEntity<?> createApiKey(@RequestBody CreateApiKeyRequest req) {
+		String error = clientService.validate(req);
+		if (error != null) {
+			return ResponseEntity.badRequest().body(error);
+		}
+		var client = clientService.createClient(req.getAppName(), req.getRatePerMinute(), req.getBurst());
 		if (client == null) {
 			return ResponseEntity.badRequest().body("appName already exists");
 		}
@@ -45,19 +58,54 @@ public class ExternalAlertController {
 
 	/**
 	 * Accepts custom alert requests from external systems.
+	 * Answers 429 with a Retry-After header when the client exceeds its rate limit.
 	 */
 	@PostMapping("/alert")
 	public ResponseEntity<?> sendCustomAlert(@Valid @RequestBody CustomAlertRequest req) {
 		if (!clientService.validateKey(req.getAppName(), req.getApiKey())) {
 			return ResponseEntity.status(401).body("Invalid apiKey or appName");
 		}
+		long waitNanos = clientService.tryConsume(req.getAppName());
+		if (waitNanos > 0) {
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+					.header(HttpHeaders.RETRY_AFTER, ApiClientService.retryAfterSeconds(waitNanos))
+					.body("Rate limit exceeded");
+		}
 
-		String message = String.format("[%s] \nApplication: %s\nDate: %s\nLog:\n%s", req.getAppName(),
-				req.getApplication(), req.getExecutionDate(),
-				req.getLog() != null ? req.getLog() : "(no log provided)");
-
-		alertService.sendCustomTelegramAlert("EXTERNAL", message);
+		alertService.sendExternalAlert(req);
 		return ResponseEntity.ok("Alert sent");
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Accepts a file (e.g. a full log) from an authenticated external system and sends it as a Telegram document.
+	 * The upload is spooled to disk and streamed to Telegram, optionally gzip-compressed (compress=true).
+	 * Answers 413 when the file exceeds monitoring.documents.max-size-bytes and 503 when the document queue is full.
+	 */
+	@PostMapping(value = "/alert/document", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+	public ResponseEntity<?> sendDocument(@RequestParam String appName, @RequestParam String apiKey,
+										  @RequestPart("file") MultipartFile file,
+										  @RequestParam(required = false) String caption,
+										  @RequestParam(defaultValue = "false") boolean compress) {
+		if (!clientService.validateKey(appName, apiKey)) {
+			return ResponseEntity.status(401).body("Invalid apiKey or appName");
+		}
+		long waitNanos = clientService.tryConsume(appName);
+		if (waitNanos > 0) {
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+					.header(HttpHeaders.RETRY_AFTER, ApiClientService.retryAfterSeconds(waitNanos))
+					.body("Rate limit exceeded");
+		}
+		if (file.isEmpty()) {
+			return ResponseEntity.badRequest().body("file is empty");
+		}
+		String text = caption != null ? "[" + appName + "] " + caption : "[" + appName + "]";
+		return switch (alertService.sendTelegramDocument(file, text, compress)) {
+			case QUEUED -> ResponseEntity.ok("Document sent");
+			case TOO_LARGE -> ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body("File too large");
+			case BUSY -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.header(HttpHeaders.RETRY_AFTER, "5")
+					.body("Too many documents pending, retry later");
+			case FAILED -> ResponseEntity.internalServerError().body("Unable to send the document");
+		};
+	}
+}
@@ -1,29 +1,140 @@
 package org.cheetah.monitoring.controllers;
 
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
 import org.cheetah.monitoring.model.Metrics;
+import org.cheetah.monitoring.services.LatestMetricsStore;
+import org.cheetah.monitoring.services.MetricsBatchReader;
+import org.cheetah.monitoring.services.MetricsQueryService;
 import org.cheetah.monitoring.services.MetricsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 /**
  * REST Controller to handle incoming metrics from remote agents.
+ * With the reactive profile the same endpoints are served by ReactiveIngestHandler.
  */
 @RestController
+@ConditionalOnWebApplication(type = Type.SERVLET)
 @RequestMapping("/api/metrics")
 public class MetricsController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     @Autowired
     private MetricsService metricsService;
 
+    @Autowired
+    private LatestMetricsStore latestMetricsStore;
+
+    @Autowired
+    private MetricsQueryService metricsQueryService;
+
+    @Autowired
+    private MetricsBatchReader metricsBatchReader;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * Receives metrics data via HTTP POST.
+     * Returns 503 with a Retry-After header when the ingest queue is full.
      * @param metrics Metrics data in JSON format.
      */
     @PostMapping
-    public void receiveMetrics(@RequestBody Metrics metrics) {
-        metricsService.saveMetrics(metrics);
+    public ResponseEntity<Void> receiveMetrics(@RequestBody Metrics metrics) {
+        if (!metricsService.saveMetrics(metrics)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * Receives an array of metrics samples in one request, as JSON or CBOR (application/cbor),
+     * optionally gzip-compressed (Content-Encoding: gzip).
+     * The array is read with a streaming parser one sample at a time, and each sample goes through
+     * the same pipeline as POST /api/metrics. Samples are queued in order; if the ingest queue fills up,
+     * the remaining ones are counted as rejected and the response is 503 with a Retry-After header.
+     * A malformed or truncated body is answered with 400, a body over the size limits with 413.
+     */
+    @PostMapping(value = "/batch", consumes = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE })
+    public ResponseEntity<?> receiveMetricsBatch(HttpServletRequest request) throws IOException {
+        boolean gzip = "gzip".equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING));
+        boolean cbor = request.getContentType() != null
+                && MediaType.APPLICATION_CBOR.isCompatibleWith(MediaType.parseMediaType(request.getContentType()));
+        MetricsBatchReader.Result result = metricsBatchReader.read(request.getInputStream(), gzip, cbor);
+        return switch (result.status()) {
+            case OK -> ResponseEntity.ok(result.response());
+            case QUEUE_FULL -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(result.response());
+            case INVALID -> ResponseEntity.badRequest().body(result.error());
+            case TOO_LARGE -> ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(result.error());
+        };
+    }
+
+    /**
+     * Returns the latest known sample of every host, served from memory.
+     */
+    @GetMapping("/latest")
+    public List<Metrics> getLatestMetrics() {
+        return latestMetricsStore.getAll();
+    }
+
+    /**
+     * Returns the metrics of a host in a time range as NDJSON (one JSON object per line), streamed
+     * while reading from MongoDB so large ranges are never fully loaded in memory.
+     * Example: GET /api/metrics/myhost?from=1720000000000&to=1720086400000&step=300000&agg=max
+     *
+     * @param hostname The host.
+     * @param from     Start of the range in millis (inclusive), default one hour ago.
+     * @param to       End of the range in millis (exclusive), default now.
+     * @param step     Distance between aggregated points in millis; raw samples if omitted.
+     * @param agg      Aggregation function: avg (default), min, max or p95.
+     */
+    @GetMapping("/{hostname}")
+    public ResponseEntity<?> getMetrics(@PathVariable String hostname,
+                                        @RequestParam(required = false) Long from,
+                                        @RequestParam(required = false) Long to,
+                                        @RequestParam(required = false) Long step,
+                                        @RequestParam(defaultValue = "avg") String agg) {
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - 3600000;
+        String error = metricsQueryService.validate(start, end, step, agg);
+        if (error != null) {
+            return ResponseEntity.badRequest().body(error);
+        }
+        StreamingResponseBody body = out -> {
+            try (Stream<Metrics> points = metricsQueryService.query(hostname, start, end, step, agg)) {
+                Iterator<Metrics> iterator = points.iterator();
+                while (iterator.hasNext()) {
+                    out.write(objectMapper.writeValueAsBytes(iterator.next()));
+                    out.write('\n');
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,199 @@
+package org.cheetah.monitoring.controllers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.cheetah.monitoring.model.AgentInfo;
+import org.cheetah.monitoring.model.Metrics;
+import org.cheetah.monitoring.model.dto.CreateApiKeyRequest;
+import org.cheetah.monitoring.model.dto.CustomAlertRequest;
+import org.cheetah.monitoring.services.AlertService;
+import org.cheetah.monitoring.services.ApiClientService;
+import org.cheetah.monitoring.services.LatestMetricsStore;
+import org.cheetah.monitoring.services.MetricsBatchReader;
+import org.cheetah.monitoring.services.MetricsQueryService;
+import org.cheetah.monitoring.services.MetricsService;
+import org.cheetah.monitoring.services.ReactiveAgentRegistrationService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * WebFlux handlers of the ingestion endpoints, used by the reactive profile instead of
+ * MetricsController and AgentRegistrationController (routes in ReactiveRoutesConfig).
+ * The event loop never blocks: agent registration uses the reactive Mongo driver, and the shared
+ * services that may block (alert checks, API key validation, history queries) run on the bounded elastic scheduler.
+ */
+@Component
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveIngestHandler {
+
+    private final MetricsService metricsService;
+    private final MetricsBatchReader metricsBatchReader;
+    private final MetricsQueryService metricsQueryService;
+    private final LatestMetricsStore latestMetricsStore;
+    private final ReactiveAgentRegistrationService agentRegistrationService;
+    private final ApiClientService clientService;
+    private final AlertService alertService;
+
+    public ReactiveIngestHandler(MetricsService metricsService, MetricsBatchReader metricsBatchReader,
+                                 MetricsQueryService metricsQueryService,
+                                 LatestMetricsStore latestMetricsStore, ReactiveAgentRegistrationService agentRegistrationService,
+                                 ApiClientService clientService, AlertService alertService) {
+        this.metricsService = metricsService;
+        this.metricsBatchReader = metricsBatchReader;
+        this.metricsQueryService = metricsQueryService;
+        this.latestMetricsStore = latestMetricsStore;
+        this.agentRegistrationService = agentRegistrationService;
+        this.clientService = clientService;
+        this.alertService = alertService;
+    }
+
+    /**
+     * POST /api/metrics: same as MetricsController.receiveMetrics.
+     */
+    public Mono<ServerResponse> receiveMetrics(ServerRequest request) {
+        return request.bodyToMono(Metrics.class)
+                .publishOn(Schedulers.boundedElastic())
+                .map(metricsService::saveMetrics)
+                .flatMap(accepted -> accepted
+                        ? ServerResponse.ok().build()
+                        : ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build());
+    }
+
+    /**
+     * POST /api/metrics/batch: same as MetricsController.receiveMetricsBatch (JSON or CBOR, optionally gzip).
+     * The body is read as it arrives through a blocking InputStream, parsed on the bounded elastic scheduler.
+     */
+    public Mono<ServerResponse> receiveMetricsBatch(ServerRequest request) {
+        boolean gzip = "gzip".equalsIgnoreCase(request.headers().firstHeader(HttpHeaders.CONTENT_ENCODING));
+        boolean cbor = request.headers().contentType()
+                .map(MediaType.APPLICATION_CBOR::isCompatibleWith)
+                .orElse(false);
+        return Mono.using(() -> DataBufferUtils.subscriberInputStream(request.body(BodyExtractors.toDataBuffers()), 16),
+                        body -> Mono.fromCallable(() -> metricsBatchReader.read(body, gzip, cbor)),
+                        this::closeQuietly)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(result -> switch (result.status()) {
+                    case OK -> ServerResponse.ok().bodyValue(result.response());
+                    case QUEUE_FULL -> ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .header(HttpHeaders.RETRY_AFTER, "1")
+                            .bodyValue(result.response());
+                    case INVALID -> ServerResponse.badRequest().bodyValue(result.error());
+                    case TOO_LARGE -> ServerResponse.status(HttpStatus.PAYLOAD_TOO_LARGE).bodyValue(result.error());
+                });
+    }
+
+    private void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            // nothing left to read
+        }
+    }
+
+    /**
+     * GET /api/metrics/latest: the latest known sample of every host, served from memory.
+     */
+    public Mono<ServerResponse> getLatestMetrics(ServerRequest request) {
+        return ServerResponse.ok().bodyValue(latestMetricsStore.getAll());
+    }
+
+    /**
+     * GET /api/metrics/{hostname}: same as MetricsController.getMetrics, streamed as NDJSON.
+     */
+    public Mono<ServerResponse> getMetrics(ServerRequest request) {
+        String hostname = request.pathVariable("hostname");
+        long end;
+        long start;
+        Long step;
+        try {
+            end = request.queryParam("to").map(Long::parseLong).orElseGet(System::currentTimeMillis);
+            start = request.queryParam("from").map(Long::parseLong).orElse(end - 3600000);
+            step = request.queryParam("step").map(Long::valueOf).orElse(null);
+        } catch (NumberFormatException e) {
+            return ServerResponse.badRequest().bodyValue("from, to and step must be integers (millis)");
+        }
+        String agg = request.queryParam("agg").orElse("avg");
+        String error = metricsQueryService.validate(start, end, step, agg);
+        if (error != null) {
+            return ServerResponse.badRequest().bodyValue(error);
+        }
+        Flux<Metrics> points = Flux.using(() -> metricsQueryService.query(hostname, start, end, step, agg),
+                        Flux::fromStream, Stream::close)
+                .subscribeOn(Schedulers.boundedElastic());
+        return ServerResponse.ok().contentType(MediaType.APPLICATION_NDJSON).body(points, Metrics.class);
+    }
+
+    /**
+     * POST /api/agent/register: same as AgentRegistrationController.registerAgent.
+     */
+    public Mono<ServerResponse> registerAgent(ServerRequest request) {
+        return request.bodyToMono(AgentInfo.class)
+                .flatMap(agentRegistrationService::registerAgent)
+                .flatMap(agent -> ServerResponse.ok().bodyValue(agent));
+    }
+
+    /**
+     * POST /api/agent/register/bulk: same as AgentRegistrationController.registerAgents.
+     */
+    public Mono<ServerResponse> registerAgents(ServerRequest request) {
+        return request.bodyToMono(new ParameterizedTypeReference<List<AgentInfo>>() { })
+                .flatMap(agentRegistrationService::registerAgents)
+                .flatMap(response -> ServerResponse.ok().bodyValue(response));
+    }
+
+    /**
+     * POST /api/external/apikey: same as ExternalAlertController.createApiKey.
+     */
+    public Mono<ServerResponse> createApiKey(ServerRequest request) {
+        return request.bodyToMono(CreateApiKeyRequest.class)
+                .publishOn(Schedulers.boundedElastic())
+                .flatMap(req -> {
+                    String error = clientService.validate(req);
+                    if (error != null) {
+                        return ServerResponse.badRequest().bodyValue(error);
+                    }
+                    var client = clientService.createClient(req.getAppName(), req.getRatePerMinute(), req.getBurst());
+                    if (client == null) {
+                        return ServerResponse.badRequest().bodyValue("appName already exists");
+                    }
+                    return ServerResponse.ok().bodyValue(client);
+                });
+    }
+
+    /**
+     * POST /api/external/alert: same as ExternalAlertController.sendCustomAlert.
+     */
+    public Mono<ServerResponse> sendCustomAlert(ServerRequest request) {
+        return request.bodyToMono(CustomAlertRequest.class)
+                .publishOn(Schedulers.boundedElastic())
+                .flatMap(req -> {
+                    if (!clientService.validateKey(req.getAppName(), req.getApiKey())) {
+                        return ServerResponse.status(HttpStatus.UNAUTHORIZED).bodyValue("Invalid apiKey or appName");
+                    }
+                    long waitNanos = clientService.tryConsume(req.getAppName());
+                    if (waitNanos > 0) {
+                        return ServerResponse.status(HttpStatus.TOO_MANY_REQUESTS)
+                                .header(HttpHeaders.RETRY_AFTER, ApiClientService.retryAfterSeconds(waitNanos))
+                                .bodyValue("Rate limit exceeded");
+                    }
+                    alertService.sendExternalAlert(req);
+                    return ServerResponse.ok().bodyValue("Alert sent");
+                });
+    }
+}
@@ -0,0 +1,98 @@
+package org.cheetah.monitoring.job;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.cheetah.monitoring.model.Metrics;
+import org.cheetah.monitoring.repositories.MetricsRepository;
+import org.cheetah.monitoring.repositories.MetricsRepositoryCustomImpl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One-off migration of the per-sample "metrics" collection into the bucketed storage.
+ * Enabled with {@code monitoring.metrics.migrate=true} together with {@code monitoring.metrics.storage=bucket}.
+ * Samples are read in _id order and the last migrated _id is checkpointed in the "migrations"
+ * collection, so an interrupted migration resumes where it stopped. The checkpoint is written after the buckets,
+ * and the buckets skip the samples they already hold, so a batch re-read after a crash is not duplicated.
+ * The source collection is left untouched.
+ */
+@Component
+@ConditionalOnProperty(name = "monitoring.metrics.migrate", havingValue = "true")
+@Slf4j
+public class MetricsMigrationRunner implements ApplicationRunner {
+
+    private static final String MIGRATIONS_COLLECTION = "migrations";
+    private static final String MIGRATION_ID = "metrics-to-buckets";
+
+    private final MongoTemplate mongoTemplate;
+    private final MetricsRepository metricsRepository;
+
+    @Value("${monitoring.metrics.storage:document}")
+    private String storage;
+
+    @Value("${monitoring.metrics.migrate-batch-size:1000}")
+    private int batchSize;
+
+    public MetricsMigrationRunner(MongoTemplate mongoTemplate, MetricsRepository metricsRepository) {
+        this.mongoTemplate = mongoTemplate;
+        this.metricsRepository = metricsRepository;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!MetricsRepositoryCustomImpl.STORAGE_BUCKET.equalsIgnoreCase(storage)) {
+            log.warn("Metrics migration requested but monitoring.metrics.storage is not 'bucket', skipping");
+            return;
+        }
+        Document checkpoint = mongoTemplate.findById(MIGRATION_ID, Document.class, MIGRATIONS_COLLECTION);
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "_id")).cursorBatchSize(batchSize);
+        long migrated = 0;
+        if (checkpoint != null) {
+            query.addCriteria(Criteria.where("_id").gt(new ObjectId(checkpoint.getString("lastId"))));
+            migrated = checkpoint.get("migrated", Number.class).longValue();
+            log.info("Resuming metrics migration after {} samples", migrated);
+        }
+
+        List<Metrics> batch = new ArrayList<>(batchSize);
+        try (Stream<Metrics> samples = mongoTemplate.stream(query, Metrics.class)) {
+            for (Metrics metrics : (Iterable<Metrics>) samples::iterator) {
+                batch.add(metrics);
+                if (batch.size() == batchSize) {
+                    migrated += migrateBatch(batch, migrated);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            migrated += migrateBatch(batch, migrated);
+        }
+        log.info("Metrics migration completed, {} samples migrated to buckets", migrated);
+    }
+
+    private int migrateBatch(List<Metrics> batch, long migratedSoFar) {
+        List<Metrics> failed = metricsRepository.insertMigratedBatch(batch);
+        if (!failed.isEmpty()) {
+            throw new IllegalStateException("Unable to migrate " + failed.size() + " metrics samples, migration stopped");
+        }
+        int size = batch.size();
+        String lastId = batch.get(size - 1).getId();
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(MIGRATION_ID)),
+                new Update().set("lastId", lastId).set("migrated", migratedSoFar + size),
+                MIGRATIONS_COLLECTION);
+        batch.clear();
+        return size;
+    }
+}
@@ -0,0 +1,14 @@
+package org.cheetah.monitoring.job;
+
+/**
+ * A port to be checked periodically for an agent: either the agent's own listening port
+ * or one of the open ports it reported.
+ *
+ * @param agentPort true if this is the agent's own listening port.
+ */
+public record PortCheck(String agentId, String hostname, String ip, int port, boolean agentPort) {
+
+    public ProbeTarget target() {
+        return new ProbeTarget(ip, port);
+    }
+}
@@ -0,0 +1,166 @@
+package org.cheetah.monitoring.job;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.cheetah.monitoring.utils.TokenBucket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Schedules port checks individually instead of sweeping every port at a fixed cadence.
+ * Each check has its own next-due time in a delay queue: checks that just failed or are flapping
+ * are probed again after the minimum interval, healthy ones back off exponentially up to the maximum
+ * interval. A single dispatcher takes due checks, caps the overall probe rate and probes them
+ * asynchronously; a check is rescheduled only once its probe completes, so it is never probed twice at once.
+ */
+@Component
+@Slf4j
+public class PortCheckScheduler {
+
+    /**
+     * Scheduling state of one check. Only the probe in flight touches the mutable fields.
+     */
+    private static final class ScheduledCheck implements Delayed {
+        private final PortCheck check;
+        private volatile boolean cancelled;
+        private long dueNanos;
+        private long intervalMs;
+        private Boolean lastOpen;
+        // Decaying count of recent state changes, above FLAPPING_SCORE the check is considered flapping.
+        private double flapScore;
+
+        private ScheduledCheck(PortCheck check, long intervalMs, long delayMs) {
+            this.check = check;
+            this.intervalMs = intervalMs;
+            this.dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((ScheduledCheck) other).dueNanos);
+        }
+    }
+
+    private static final double FLAPPING_SCORE = 0.5;
+
+    private final PortProber portProber;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final TokenBucket rateLimiter;
+    private final DelayQueue<ScheduledCheck> queue = new DelayQueue<>();
+    private final Map<PortCheck, ScheduledCheck> checks = new ConcurrentHashMap<>();
+    private final Thread dispatcher;
+    private volatile BiConsumer<PortCheck, Boolean> resultHandler = (check, open) -> { };
+
+    public PortCheckScheduler(PortProber portProber,
+                              @Value("${monitoring.probe.min-interval-ms:15000}") long minIntervalMs,
+                              @Value("${monitoring.probe.max-interval-ms:300000}") long maxIntervalMs,
+                              @Value("${monitoring.probe.max-rate-per-second:200}") double maxRatePerSecond) {
+        this.portProber = portProber;
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        this.rateLimiter = new TokenBucket(maxRatePerSecond, Math.max(1, (int) maxRatePerSecond));
+        this.dispatcher = new Thread(this::dispatch, "port-check-scheduler");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Sets the callback invoked with the result of every probe.
+     */
+    public void setResultHandler(BiConsumer<PortCheck, Boolean> resultHandler) {
+        this.resultHandler = resultHandler;
+    }
+
+    /**
+     * Replaces the set of scheduled checks. New checks are spread randomly over the minimum interval
+     * so that a large sync does not probe everything at once; checks that are no longer present are dropped.
+     */
+    public void sync(Collection<PortCheck> current) {
+        Set<PortCheck> wanted = Set.copyOf(current);
+        checks.forEach((check, scheduled) -> {
+            if (!wanted.contains(check)) {
+                // Left in the queue (removing from a DelayQueue is O(n)): the dispatcher skips it when it is due.
+                scheduled.cancelled = true;
+                checks.remove(check);
+            }
+        });
+        for (PortCheck check : wanted) {
+            checks.computeIfAbsent(check, c -> {
+                ScheduledCheck scheduled = new ScheduledCheck(c, minIntervalMs,
+                        ThreadLocalRandom.current().nextLong(minIntervalMs));
+                queue.add(scheduled);
+                return scheduled;
+            });
+        }
+    }
+
+    /**
+     * Returns the number of scheduled checks.
+     */
+    public int size() {
+        return checks.size();
+    }
+
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                ScheduledCheck scheduled = queue.take();
+                if (scheduled.cancelled) {
+                    continue;
+                }
+                rateLimiter.acquire();
+                portProber.probe(scheduled.check.target())
+                        .whenComplete((open, error) -> complete(scheduled, error == null && Boolean.TRUE.equals(open)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Error dispatching port check: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void complete(ScheduledCheck scheduled, boolean open) {
+        if (scheduled.cancelled) {
+            return;
+        }
+        try {
+            resultHandler.accept(scheduled.check, open);
+        } catch (Exception e) {
+            log.error("Error handling result of {}: {}", scheduled.check, e.getMessage());
+        }
+        boolean changed = scheduled.lastOpen != null && scheduled.lastOpen != open;
+        scheduled.lastOpen = open;
+        scheduled.flapScore = scheduled.flapScore / 2 + (changed ? 1 : 0);
+        if (!open || scheduled.flapScore > FLAPPING_SCORE) {
+            scheduled.intervalMs = minIntervalMs;
+        } else {
+            scheduled.intervalMs = Math.min(maxIntervalMs, scheduled.intervalMs * 2);
+        }
+        scheduled.dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(scheduled.intervalMs);
+        if (!scheduled.cancelled) {
+            queue.add(scheduled);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.interrupt();
+    }
+}
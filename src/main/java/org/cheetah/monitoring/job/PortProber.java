@@ -0,0 +1,115 @@
+package org.cheetah.monitoring.job;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Probes TCP ports concurrently.
+ * Every connect attempt runs on its own virtual thread, so thousands of probes can be in flight
+ * at the same time while a global and a per-host semaphore keep the load on the network
+ * and on each single target bounded.
+ * A host's semaphore only exists while probes of that host are in flight, so hosts that are
+ * no longer probed do not leave an entry behind.
+ */
+@Component
+public class PortProber {
+
+    /**
+     * Per-host semaphore and the number of probes using it. users is only read and written
+     * inside ConcurrentHashMap.compute for the host, which runs atomically per key.
+     */
+    private static final class HostPermits {
+        private final Semaphore permits;
+        private int users;
+
+        private HostPermits(int permits) {
+            this.permits = new Semaphore(permits);
+        }
+    }
+
+    private final int connectTimeoutMs;
+    private final int perHostConcurrency;
+    private final Semaphore globalPermits;
+    private final Map<String, HostPermits> hostPermits = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public PortProber(@Value("${monitoring.probe.connect-timeout-ms:200}") int connectTimeoutMs,
+                      @Value("${monitoring.probe.max-concurrency:2000}") int maxConcurrency,
+                      @Value("${monitoring.probe.per-host-concurrency:8}") int perHostConcurrency) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.perHostConcurrency = perHostConcurrency;
+        this.globalPermits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * Asynchronously checks whether the given target accepts TCP connections.
+     *
+     * @param target The ip/port to probe.
+     * @return a future completed with true if the port is open, false otherwise.
+     */
+    public CompletableFuture<Boolean> probe(ProbeTarget target) {
+        return CompletableFuture.supplyAsync(() -> probeBlocking(target), executor);
+    }
+
+    private boolean probeBlocking(ProbeTarget target) {
+        Semaphore hostSemaphore = hostPermits.compute(target.ip(), (ip, host) -> {
+            if (host == null) {
+                host = new HostPermits(perHostConcurrency);
+            }
+            host.users++;
+            return host;
+        }).permits;
+        try {
+            // Take the per-host permit first so a busy host does not hold global slots while waiting.
+            hostSemaphore.acquire();
+            try {
+                globalPermits.acquire();
+                try {
+                    return isPortOpen(target.ip(), target.port());
+                } finally {
+                    globalPermits.release();
+                }
+            } finally {
+                hostSemaphore.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            // The last probe of the host removes its semaphore.
+            hostPermits.computeIfPresent(target.ip(), (ip, host) -> --host.users == 0 ? null : host);
+        }
+    }
+
+    /**
+     * Checks if a specific port on a given IP is open by attempting a TCP connection with a timeout.
+     *
+     * @param ip   The IP address.
+     * @param port The port number.
+     * @return true if the port is open, false otherwise.
+     */
+    private boolean isPortOpen(String ip, int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(ip, port), connectTimeoutMs);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -1,29 +1,45 @@
 package org.cheetah.monitoring.job;
 
-import java.net.InetSocketAddress;
-import java.net.Socket;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 import org.cheetah.monitoring.model.AgentInfo;
 import org.cheetah.monitoring.model.Alert;
-import org.cheetah.monitoring.model.JobLock;
 import org.cheetah.monitoring.repositories.AgentInfoRepository;
 import org.cheetah.monitoring.repositories.AlertRepository;
-import org.cheetah.monitoring.repositories.JobLockRepository;
+import org.cheetah.monitoring.services.AlertDeduplicator;
 import org.cheetah.monitoring.services.AlertService;
+import org.cheetah.monitoring.services.ClusterMembershipService;
+import org.cheetah.monitoring.services.LeaseLockService;
+import org.cheetah.monitoring.services.LeaseLockService.Lease;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
 @Component
+@Slf4j
 public class PortStatusJob {
 
-    // Static final UUID, computed once when the class is loaded.
-    private static final String JOB_UUID = UUID.randomUUID().toString();
+    private static final String JOB_NAME = "PortStatusJob";
 
     @Autowired
     private AgentInfoRepository agentInfoRepository;
@@ -32,120 +48,220 @@ public class PortStatusJob {
     private AlertRepository alertRepository;
 
     @Autowired
-    private JobLockRepository jobLockRepository;
+    private LeaseLockService leaseLockService;
+
+    @Autowired
+    private ClusterMembershipService clusterMembershipService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
 
     @Autowired
     private AlertService alertService;
 
+    @Autowired
+    private AlertDeduplicator alertDeduplicator;
+
+    @Autowired
+    private PortCheckScheduler portCheckScheduler;
+
+    @Value("${monitoring.cluster.sharding.enabled:true}")
+    private boolean shardingEnabled;
+
+    // Lease of the job when sharding is disabled, kept across syncs and renewed by the lease heartbeat.
+    private volatile Lease lease;
+
+    // Last known status of each checked agent, by agent id.
+    private final Map<String, String> agentStatuses = new ConcurrentHashMap<>();
+
+    // Status changes not written yet, by agent id.
+    private final Map<String, StatusChange> dirtyStatuses = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        portCheckScheduler.setResultHandler(this::onResult);
+    }
+
     /**
-     * Scheduled job that runs every 5 minutes.
-     * It checks for a lock based on the static JOB_UUID.
-     * If the lock exists, the job skips execution.
-     * Otherwise, it creates the lock, verifies each agent's ports and the agent's own listening port,
-     * sends alerts via Telegram if necessary (only once every 24 hours per issue),
-     * updates the agent's status accordingly, and finally removes the lock.
+     * Periodically syncs the checks of the PortCheckScheduler with the registered agents:
+     * each agent's own listening port plus every open port it reported.
+     * With sharding enabled, every node checks only the agents of its own shard of the consistent hash ring,
+     * so probing scales with the number of nodes and the shards move automatically when nodes join or die.
+     * With sharding disabled, only the node holding the cluster-wide lease of the job checks the agents,
+     * the others check nothing.
      */
-    @Scheduled(fixedDelay = 300000)
-    public void checkPortsStatus() {
-        // Check for an existing lock using JOB_UUID.
-        Optional<JobLock> lockOpt = jobLockRepository.findById(JOB_UUID);
-        if (lockOpt.isPresent()) {
-            System.out.println("Job lock exists with UUID " + JOB_UUID + ", skipping execution.");
-            return;
+    @Scheduled(fixedDelayString = "${monitoring.probe.sync-interval-ms:60000}")
+    public void syncChecks() {
+        boolean checkAgents = true;
+        if (!shardingEnabled) {
+            Lease current = lease;
+            if (current == null || !current.isValid()) {
+                current = leaseLockService.tryAcquire(JOB_NAME);
+                lease = current;
+                if (current != null) {
+                    log.info("Job lease for {} acquired with fencing token {}", JOB_NAME, current.getFencingToken());
+                }
+            }
+            checkAgents = current != null;
         }
-        // Create and save the lock.
-        JobLock jobLock = JobLock.builder()
-                .id(JOB_UUID)
-                .jobName("PortStatusJob")
-                .lockId(JOB_UUID)
-                .timestamp(Instant.now().toEpochMilli())
-                .build();
-        jobLockRepository.save(jobLock);
-        System.out.println("Job lock created with UUID " + JOB_UUID);
 
-        try {
-            long twentyFourHoursAgo = Instant.now().minusSeconds(24 * 3600).toEpochMilli();
-
-            // Retrieve all registered agents.
-            List<AgentInfo> agents = agentInfoRepository.findAll();
-            for (AgentInfo agent : agents) {
-                String ip = agent.getIp();
-                String hostname = agent.getHostname();
-                
-                // --- Check if the agent itself is reachable on agentPort ---
-                int agentPort = agent.getAgentPort();
-                if (!isPortOpen(ip, agentPort)) {
-                    // Agent is not reachable, update status if not already "DOWN".
-                    if (!"DOWN".equalsIgnoreCase(agent.getStatus())) {
-                        agent.setStatus("DOWN");
-                        agentInfoRepository.save(agent);
-                    }
-                    // Check for an "AGENT" alert in the last 24 hours.
-                    Alert lastAgentAlert = alertRepository.findTopByIpAndMetricTypeOrderByTimestampDesc(ip, "AGENT");
-                    if (lastAgentAlert == null || lastAgentAlert.getTimestamp() < twentyFourHoursAgo) {
-                        String message = String.format("Alert! Agent %s (%s) is down on port %d.", hostname, ip, agentPort);
-                        alertService.sendCustomTelegramAlert("AGENT", message);
-                        Alert alert = Alert.builder()
-                                .hostname(hostname)
-                                .ip(ip).date(new Date())
-                                .metricType("AGENT")
-                                .port(null) // Not applicable for agent-down alert.
-                                .timestamp(Instant.now().toEpochMilli())
-                                .build();
-                        alertRepository.save(alert);
-                    }
-                } else {
-                    // Agent is reachable; ensure status is "UP".
-                    if (!"UP".equalsIgnoreCase(agent.getStatus())) {
-                        agent.setStatus("UP");
-                        agentInfoRepository.save(agent);
-                    }
-                }
+        // Iterate the agents through a cursor with a projection, so the collection is never loaded at once.
+        List<PortCheck> checks = new ArrayList<>();
+        Set<String> agentIds = new HashSet<>();
+        if (checkAgents) {
+            try (Stream<AgentInfo> agents = agentInfoRepository.streamAllForChecks()) {
+                agents.filter(agent -> !shardingEnabled || clusterMembershipService.owns(agent.getId()))
+                        .forEach(agent -> {
+                            agentIds.add(agent.getId());
+                            // Pending changes are newer than what is stored.
+                            if (!dirtyStatuses.containsKey(agent.getId())) {
+                                agentStatuses.put(agent.getId(), agent.getStatus() != null ? agent.getStatus() : "");
+                            }
+                            checks.add(new PortCheck(agent.getId(), agent.getHostname(), agent.getIp(), agent.getAgentPort(), true));
+                            if (agent.getOpenPorts() != null) {
+                                for (Integer port : agent.getOpenPorts()) {
+                                    checks.add(new PortCheck(agent.getId(), agent.getHostname(), agent.getIp(), port, false));
+                                }
+                            }
+                        });
+            }
+        }
+        agentStatuses.keySet().retainAll(agentIds);
+        portCheckScheduler.sync(checks);
+        log.info("Scheduled {} port checks for {} agents", portCheckScheduler.size(), agentIds.size());
+    }
+
+    /**
+     * Handles the result of a single port check: updates the agent's status when its own port is checked
+     * and sends alerts via Telegram if necessary (only once every 24 hours per issue).
+     * When running with a lease, results are ignored once the lease is lost.
+     */
+    private void onResult(PortCheck check, boolean open) {
+        Lease current = lease;
+        if (!shardingEnabled && (current == null || !current.isValid())) {
+            return;
+        }
+        String ip = check.ip();
+        String hostname = check.hostname();
 
-                // --- Check the reported open ports (PORT alerts) ---
-                List<Integer> ports = agent.getOpenPorts();
-                if (ports == null || ports.isEmpty()) {
-                    continue;
+        if (check.agentPort()) {
+            // --- Check if the agent itself is reachable on agentPort ---
+            if (!open) {
+                // Agent is not reachable, update status if not already "DOWN".
+                if (!"DOWN".equalsIgnoreCase(agentStatuses.get(check.agentId()))) {
+                    markStatus(check.agentId(), "DOWN", current);
                 }
-                for (Integer port : ports) {
-                    if (!isPortOpen(ip, port)) {
-                        // Retrieve the most recent alert for this IP, metric type "PORT", and port.
-                        Alert lastPortAlert = alertRepository.findTopByIpAndMetricTypeAndPortOrderByTimestampDesc(ip, "PORT", port);
-                        if (lastPortAlert == null || lastPortAlert.getTimestamp() < twentyFourHoursAgo) {
-                            String message = String.format("Alert! %s (%s): port %d is down.", hostname, ip, port);
-                            alertService.sendCustomTelegramAlert("PORT", message);
-                            Alert alert = Alert.builder()
-                                    .hostname(hostname)
-                                    .ip(ip)
-                                    .metricType("PORT")
-                                    .port(port)
-                                    .timestamp(Instant.now().toEpochMilli())
-                                    .build();
-                            alertRepository.save(alert);
-                        }
-                    }
+                // Send an "AGENT" alert unless one was sent in the last 24 hours.
+                if (alertDeduplicator.tryAcquire(ip, "AGENT", null)) {
+                    String message = String.format("Alert! Agent %s (%s) is down on port %d.", hostname, ip, check.port());
+                    alertService.sendCustomTelegramAlert("AGENT", message);
+                    Alert alert = Alert.builder()
+                            .hostname(hostname)
+                            .ip(ip).date(new Date())
+                            .metricType("AGENT")
+                            .port(null) // Not applicable for agent-down alert.
+                            .timestamp(Instant.now().toEpochMilli())
+                            .build();
+                    alertRepository.save(alert);
                 }
+            } else {
+                // Agent is reachable; ensure status is "UP" and refresh lastSeen.
+                markStatus(check.agentId(), "UP", current);
             }
-        } finally {
-            // Remove the lock at the end of job execution.
-            jobLockRepository.deleteById(JOB_UUID);
-            System.out.println("Job lock with UUID " + JOB_UUID + " removed.");
+            return;
+        }
+
+        // --- Check a reported open port (PORT alerts) ---
+        if (!open) {
+            // Send a "PORT" alert unless one was sent in the last 24 hours for this IP and port.
+            if (alertDeduplicator.tryAcquire(ip, "PORT", check.port())) {
+                String message = String.format("Alert! %s (%s): port %d is down.", hostname, ip, check.port());
+                alertService.sendCustomTelegramAlert("PORT", message);
+                Alert alert = Alert.builder()
+                        .hostname(hostname)
+                        .ip(ip)
+                        .metricType("PORT")
+                        .port(check.port())
+                        .timestamp(Instant.now().toEpochMilli())
+                        .build();
+                alertRepository.save(alert);
+            }
+        }
+    }
+
+    /**
+     * Records the status of an agent seen by a probe. The change is only tracked in memory (dirty map)
+     * and written by the next status flush, merged with the other changes of the same agent.
+     */
+    private void markStatus(String agentId, String status, Lease lease) {
+        long now = System.currentTimeMillis();
+        boolean changed = !status.equalsIgnoreCase(agentStatuses.get(agentId));
+        if (!changed && !"UP".equals(status)) {
+            // Nothing to write: lastSeen only moves while the agent is reachable.
+            return;
         }
+        agentStatuses.put(agentId, status);
+        StatusChange change = new StatusChange(status, "UP".equals(status) ? now : 0L, changed ? now : 0L,
+                lease != null ? lease.getFencingToken() : null);
+        dirtyStatuses.merge(agentId, change, StatusChange::merge);
     }
 
     /**
-     * Checks if a specific port on a given IP is open by attempting a TCP connection with a timeout.
-     *
-     * @param ip   The IP address.
-     * @param port The port number.
-     * @return true if the port is open, false otherwise.
+     * Writes the pending status changes with a single unordered bulk of partial updates
+     * ($set on status, lastSeen and lastChange), instead of saving each agent document.
+     * When a change was made under a lease, the write is fenced by its token: it is ignored if a node
+     * holding a newer lease already updated the agent, so a stale node cannot overwrite fresher results.
      */
-    private boolean isPortOpen(String ip, int port) {
-        try (Socket socket = new Socket()) {
-            socket.connect(new InetSocketAddress(ip, port), 200);
-            return true;
+    @Scheduled(fixedDelayString = "${monitoring.probe.status-flush-interval-ms:5000}")
+    @PreDestroy
+    public void flushStatuses() {
+        if (dirtyStatuses.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, AgentInfo.class);
+        int count = 0;
+        for (String agentId : dirtyStatuses.keySet()) {
+            StatusChange change = dirtyStatuses.remove(agentId);
+            if (change == null) {
+                continue;
+            }
+            Criteria criteria = Criteria.where("_id").is(agentId);
+            Update update = new Update().set("status", change.status());
+            if (change.lastSeen() > 0) {
+                update.set("lastSeen", change.lastSeen());
+            }
+            if (change.lastChange() > 0) {
+                update.set("lastChange", change.lastChange());
+            }
+            if (change.fencingToken() != null) {
+                criteria = criteria.and("statusFence").not().gt(change.fencingToken());
+                update.set("statusFence", change.fencingToken());
+            }
+            bulk.updateOne(Query.query(criteria), update);
+            count++;
+        }
+        if (count == 0) {
+            return;
+        }
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            log.error("Error writing {} of {} agent status updates", e.getErrors().size(), count);
         } catch (Exception e) {
-            return false;
+            log.error("Error writing {} agent status updates: {}", count, e.getMessage());
+        }
+    }
+
+    /**
+     * Pending status write of an agent. lastSeen and lastChange are 0 when they must not be updated.
+     */
+    private record StatusChange(String status, long lastSeen, long lastChange, Long fencingToken) {
+
+        private StatusChange merge(StatusChange newer) {
+            return new StatusChange(newer.status,
+                    Math.max(lastSeen, newer.lastSeen),
+                    newer.lastChange > 0 ? newer.lastChange : lastChange,
+                    newer.fencingToken);
         }
     }
-}
\ No newline at end of file
+}
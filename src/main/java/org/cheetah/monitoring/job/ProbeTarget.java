@@ -0,0 +1,7 @@
+package org.cheetah.monitoring.job;
+
+/**
+ * A single TCP endpoint (ip + port) to be probed by the {@link PortProber}.
+ */
+public record ProbeTarget(String ip, int port) {
+}
@@ -33,4 +33,12 @@ public class AgentInfo {
 
 	// The agent status managed by the server: "UP" or "DOWN"
 	private String status;
+	// Last time (in millis) the agent was seen alive: registration or agentPort reachable
+	private long lastSeen;
+	// Last heartbeat (in millis): metrics sample or registration. Unlike lastSeen, never set by the port probes
+	private long lastHeartbeat;
+	// Last time (in millis) the status changed
+	private long lastChange;
+	// Fencing token of the PortStatusJob run that last wrote the status
+	private long statusFence;
 }
\ No newline at end of file
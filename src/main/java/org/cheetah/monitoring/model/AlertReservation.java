@@ -0,0 +1,30 @@
+package org.cheetah.monitoring.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Represents the right to send an alert for an issue (ip, metricType, port), shared by all the monitoring nodes.
+ * There is one document per issue, whose id is built from the issue; it is removed by the TTL index on expireAt
+ * once the suppression window is over, or explicitly when the issue recovers.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "alertReservations")
+public class AlertReservation {
+    @Id
+    private String id;          // ip|metricType|port
+    private String nodeId;      // Node that sent the alert
+    private long sentAt;        // Time (in millis) when the alert was sent
+    private long expiresAt;     // Time (in millis) after which another alert may be sent
+    private Date expireAt;      // When the document is removed
+}
@@ -31,4 +31,15 @@ public class ApiClient {
 
     /** Human‐readable creation date */
     private String createdAtHuman;
+
+    /** Sustained limit of external alerts per minute (null: monitoring.api-keys.default-rate-per-minute) */
+    private Double ratePerMinute;
+
+    /** Alerts that can be sent at once after an idle period (null: monitoring.api-keys.default-burst) */
+    private Integer burst;
+
+    /** Usage counters, flushed periodically from memory */
+    private long acceptedCount;
+    private long rejectedCount;
+    private long lastUsedAt;
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package org.cheetah.monitoring.model;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Represents a live monitoring node. Each node refreshes its own document with a heartbeat;
+ * the documents of dead nodes are removed by the TTL index on expireAt.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "clusterNodes")
+public class ClusterNode {
+    @Id
+    private String id;          // Node id (see NodeIdentity)
+    private long startedAt;     // Time (in millis) when the node started
+    private long lastHeartbeat; // Time (in millis) of the last heartbeat
+    private Date expireAt;      // When the document is removed if the node stops sending heartbeats
+}
@@ -9,7 +9,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 /**
- * Represents a lock for a scheduled job.
+ * Represents a lease on a scheduled job, shared by all the monitoring nodes.
+ * There is one document per job, whose id is the job name.
  */
 @Data
 @NoArgsConstructor
@@ -19,7 +20,9 @@ import lombok.NoArgsConstructor;
 public class JobLock {
     @Id
     private String id;
-    private String jobName;   // e.g., "PortStatusJob"
-    private String lockId;    // Generated UUID
-    private long timestamp;   // Time (in millis) when the lock was created
-}
\ No newline at end of file
+    private String jobName;     // e.g., "PortStatusJob"
+    private String lockId;      // Id of the node holding the lease
+    private long timestamp;     // Time (in millis) when the lease was last acquired or renewed
+    private long expiresAt;     // Time (in millis) after which the lease can be taken by another node
+    private long fencingToken;  // Incremented on every acquisition
+}
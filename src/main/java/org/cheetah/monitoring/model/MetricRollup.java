@@ -0,0 +1,51 @@
+package org.cheetah.monitoring.model;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.cheetah.monitoring.utils.LogHistogram;
+import org.springframework.data.annotation.Id;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Aggregate of one metric of one host over a time bucket (one minute, hour or day).
+ * Stored in a different collection per resolution (see RollupService.Resolution).
+ * All stored fields can be merged with $inc/$min/$max, so several nodes can contribute to the same bucket;
+ * avg and p95 are derived when reading.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MetricRollup {
+    @Id
+    private String id;
+
+    private String hostname;
+    // e.g. "CPU", "Disk", "RAM" or any named value such as "disk_used_pct{mount=/var}"
+    private String metric;
+    // Start of the bucket (in millis)
+    private long bucketStart;
+    // When the bucket is deleted by the TTL index
+    private Date expireAt;
+
+    private long count;
+    private double sum;
+    private double min;
+    private double max;
+    // Sample count per LogHistogram bin
+    private Map<String, Long> histogram;
+
+    public double getAvg() {
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    public double getP95() {
+        double p95 = LogHistogram.percentile(histogram, 0.95);
+        return Double.isNaN(p95) ? p95 : Math.max(min, Math.min(max, p95));
+    }
+}
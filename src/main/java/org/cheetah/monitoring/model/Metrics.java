@@ -1,9 +1,15 @@
 package org.cheetah.monitoring.model;
 
+import java.util.Map;
+import java.util.function.ObjDoubleConsumer;
+
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -11,6 +17,8 @@ import lombok.NoArgsConstructor;
 
 /**
  * Represents system metrics collected from remote agents.
+ * Besides the fixed CPU/Disk/RAM usage, a sample can carry any number of named metrics in values,
+ * e.g. "load1", "disk_used_pct{mount=/var}" or "net_rx_bytes{iface=eth0}" (name, then optional tags).
  */
 @Data
 @Document(collection = "metrics")
@@ -26,10 +34,36 @@ public class Metrics {
     @Indexed(expireAfter = "2592000s", name = "metric_expiration_idx")
     private long timestamp;
     
+    public static final String CPU = "CPU";
+    public static final String DISK = "Disk";
+    public static final String RAM = "RAM";
+
     // Usage values are expressed in percentage.
     private double cpuUsage;
     private double diskUsage;
     private double ramUsage;
-    
-    
+
+    // Additional metrics by name. Not stored as is: see encodedValues.
+    @Transient
+    private Map<String, Double> values;
+
+    // Storage form of values, keyed by the id of each name in the MetricNameDictionary.
+    @JsonIgnore
+    private Map<String, Double> encodedValues;
+
+    /**
+     * Passes every metric of the sample to the consumer: CPU, Disk and RAM first, then the named values.
+     */
+    public void forEachValue(ObjDoubleConsumer<String> consumer) {
+        consumer.accept(CPU, cpuUsage);
+        consumer.accept(DISK, diskUsage);
+        consumer.accept(RAM, ramUsage);
+        if (values != null) {
+            values.forEach((name, value) -> {
+                if (value != null) {
+                    consumer.accept(name, value);
+                }
+            });
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+package org.cheetah.monitoring.model;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Compact storage of the metrics of one host over one time bucket (one hour by default).
+ * Samples are stored column-wise: the i-th entry of each array belongs to the same sample,
+ * and timestamps are stored as int offsets from bucketStart.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "metricsBuckets")
+public class MetricsBucket {
+    @Id
+    private String id;
+
+    private String hostname;
+    private String ip;
+
+    // Start of the bucket (in millis)
+    private long bucketStart;
+
+    // Same instant as bucketStart, as a date so the TTL index can expire the bucket
+    private Date bucketDate;
+
+    private int count;
+
+    // Sample timestamps, as millis since bucketStart
+    private int[] offsets;
+
+    // Usage values are expressed in percentage.
+    private double[] cpu;
+    private double[] disk;
+    private double[] ram;
+
+    // Named values of each sample, keyed by MetricNameDictionary id (empty map when the sample has none).
+    private List<Map<String, Double>> values;
+
+    // Highest _id of the "metrics" collection appended by the migration (null for buckets written live).
+    private ObjectId migratedUpTo;
+}
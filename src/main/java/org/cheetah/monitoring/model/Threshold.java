@@ -9,7 +9,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 /**
- * Represents a threshold configuration for a specific metric.
+ * Represents a threshold configuration for a specific metric, with the optional rule settings
+ * (duration window, consecutive samples, rate of change, recovery hysteresis) used by the AlertRuleEngine.
  */
 @Data
 @NoArgsConstructor
@@ -20,9 +21,25 @@ public class Threshold {
     @Id
     private String id;
     
-    // For example: "CPU", "Disk", "RAM", "PORT"
+    // For example: "CPU", "Disk", "RAM", "PORT", or a named metric with or without tags
+    // ("load1", "disk_used_pct" for every mount, "disk_used_pct{mount=/var}" for one mount)
     private String metricType;
     
     // The threshold value (percentage for CPU, Disk, RAM, etc.)
     private double thresholdValue;
+
+    // Optional rule settings, evaluated by the AlertRuleEngine. When none is set an alert fires
+    // as soon as a sample reaches thresholdValue and recovers on the first sample below it.
+
+    // Compare the average over this window (millis) instead of the single sample.
+    private Long windowMs;
+
+    // Number of consecutive samples the condition must hold to fire (and to recover). Default 1.
+    private Integer consecutiveSamples;
+
+    // Also require the value to grow at least this much per minute (over the window, or since the previous sample).
+    private Double minRatePerMinute;
+
+    // Hysteresis: once firing, recover only below this value instead of thresholdValue.
+    private Double recoveryValue;
 }
\ No newline at end of file
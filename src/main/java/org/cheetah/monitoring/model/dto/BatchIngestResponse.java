@@ -0,0 +1,19 @@
+// src/main/java/org/cheetah/monitoring/dto/BatchIngestResponse.java
+package org.cheetah.monitoring.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Response body of a batch metrics ingest.
+ * Samples are queued in order: when the queue fills up, the first {@code accepted} samples
+ * were queued and the following {@code rejected} ones must be sent again.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchIngestResponse {
+    private int accepted;
+    private int rejected;
+}
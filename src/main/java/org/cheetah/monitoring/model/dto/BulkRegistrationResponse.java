@@ -0,0 +1,23 @@
+// src/main/java/org/cheetah/monitoring/dto/BulkRegistrationResponse.java
+package org.cheetah.monitoring.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Response body of a bulk agent registration.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkRegistrationResponse {
+    /** number of agents in the request */
+    private int received;
+    /** agents registered for the first time */
+    private int inserted;
+    /** agents already registered, updated in place */
+    private int updated;
+    /** agents skipped because invalid (missing ip or hostname) or not written */
+    private int failed;
+}
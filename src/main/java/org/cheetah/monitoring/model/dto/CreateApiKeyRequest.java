@@ -2,13 +2,19 @@
 package org.cheetah.monitoring.model.dto;
 
 import lombok.Data;
-import jakarta.validation.constraints.NotBlank;
 
 /**
  * Request body to generate a new API key.
+ * Checked by ApiClientService.validate: no Bean Validation provider is on the classpath.
  */
 @Data
 public class CreateApiKeyRequest {
-    @NotBlank(message = "appName is required")
+    /** Required. */
     private String appName;
+
+    /** Optional rate limit (alerts per minute, 0.01 to 60000); the server default when omitted. */
+    private Double ratePerMinute;
+
+    /** Optional burst (1 to 1000); the server default when omitted. */
+    private Integer burst;
 }
\ No newline at end of file
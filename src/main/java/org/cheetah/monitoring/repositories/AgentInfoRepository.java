@@ -1,7 +1,10 @@
 package org.cheetah.monitoring.repositories;
 
+import java.util.stream.Stream;
+
 import org.cheetah.monitoring.model.AgentInfo;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 
 public interface AgentInfoRepository extends MongoRepository<AgentInfo, String> {
     /**
@@ -17,4 +20,19 @@ public interface AgentInfoRepository extends MongoRepository<AgentInfo, String>
      * Finds an agent record by its hostname.
      */
     AgentInfo findByHostname(String hostname);
+
+    /**
+     * Streams every agent through a cursor, with only the fields needed to check it
+     * (hostname, ip, agentPort, openPorts and status), so the collection is never loaded at once.
+     * The caller must close the stream.
+     */
+    @Query(value = "{}", fields = "{ 'hostname': 1, 'ip': 1, 'agentPort': 1, 'openPorts': 1, 'status': 1 }")
+    Stream<AgentInfo> streamAllForChecks();
+
+    /**
+     * Streams every agent through a cursor with only hostname, ip and lastHeartbeat, for the HeartbeatTracker.
+     * The caller must close the stream.
+     */
+    @Query(value = "{}", fields = "{ 'hostname': 1, 'ip': 1, 'lastHeartbeat': 1 }")
+    Stream<AgentInfo> streamAllForHeartbeats();
 }
\ No newline at end of file
@@ -5,11 +5,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 
 /**
  * Repository interface for Metrics operations.
+ * Queries that must work in every storage mode are declared in {@link MetricsRepositoryCustom}.
  */
-public interface MetricsRepository extends MongoRepository<Metrics, String> {
-    // Add custom query methods if necessary
-	/**
-     * Retrieves the latest metrics record for a given hostname.
-     */
-    Metrics findTopByHostnameOrderByTimestampDesc(String hostname);
-}
\ No newline at end of file
+public interface MetricsRepository extends MongoRepository<Metrics, String>, MetricsRepositoryCustom {
+}
@@ -0,0 +1,64 @@
+package org.cheetah.monitoring.repositories;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.cheetah.monitoring.model.Metrics;
+
+/**
+ * Metrics operations that depend on the configured storage mode
+ * ({@code monitoring.metrics.storage}): one document per sample ("document")
+ * or per-host time buckets ("bucket").
+ */
+public interface MetricsRepositoryCustom {
+
+    /**
+     * Outcome of insertBatch: the samples whose write failed with a transient error and may be retried,
+     * and how many samples were dropped because their write failed with an error a retry cannot fix.
+     */
+    record BatchResult(List<Metrics> retryable, int dropped) {
+
+        public static final BatchResult WRITTEN = new BatchResult(List.of(), 0);
+    }
+
+    /**
+     * Writes a batch of samples with bulk operations.
+     *
+     * @param batch The samples to write.
+     * @return the samples to retry and the number of samples dropped, {@link BatchResult#WRITTEN} on success.
+     */
+    BatchResult insertBatch(List<Metrics> batch);
+
+    /**
+     * Appends a batch of samples read from the "metrics" collection, in _id order, to the buckets.
+     * Idempotent: every bucket records the highest source _id appended to it, and samples at or below it
+     * are skipped, so a batch written again after a crash is not duplicated.
+     *
+     * @param batch The samples to write, in ascending _id order.
+     * @return the samples that could not be written and may be retried, empty on success.
+     */
+    List<Metrics> insertMigratedBatch(List<Metrics> batch);
+
+    /**
+     * Retrieves the latest metrics record for a given hostname.
+     */
+    Metrics findTopByHostnameOrderByTimestampDesc(String hostname);
+
+    /**
+     * Retrieves the latest metrics record of every host that reported since the given time.
+     */
+    List<Metrics> findLatestPerHost(long since);
+
+    /**
+     * Streams the samples of a host with from <= timestamp < to, in ascending timestamp order.
+     * The caller must close the stream.
+     */
+    Stream<Metrics> streamRange(String hostname, long from, long to);
+
+    /**
+     * Streams one point per step of the samples of a host with from <= timestamp < to,
+     * aggregated server-side with the given function ("avg", "min", "max" or "p95").
+     * Each point carries the start of its step as timestamp. The caller must close the stream.
+     */
+    Stream<Metrics> aggregateRange(String hostname, long from, long to, long step, String agg);
+}
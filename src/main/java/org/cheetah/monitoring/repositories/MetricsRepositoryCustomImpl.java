@@ -0,0 +1,401 @@
+package org.cheetah.monitoring.repositories;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.cheetah.monitoring.repositories.MetricsRepositoryCustom.BatchResult;
+import org.cheetah.monitoring.model.Metrics;
+import org.cheetah.monitoring.model.MetricsBucket;
+import org.cheetah.monitoring.services.MetricNameDictionary;
+import org.cheetah.monitoring.utils.MetricsAggregator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.GroupOperation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.bulk.BulkWriteError;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Implementation of {@link MetricsRepositoryCustom} for both storage modes.
+ * In "bucket" mode each host gets one {@link MetricsBucket} document per bucket, and new samples
+ * are appended to it with a single upsert per host and bucket.
+ * The named values of the samples are stored keyed by the ids of the {@link MetricNameDictionary}
+ * and decoded on every read.
+ */
+@Slf4j
+public class MetricsRepositoryCustomImpl implements MetricsRepositoryCustom {
+
+    public static final String STORAGE_DOCUMENT = "document";
+    public static final String STORAGE_BUCKET = "bucket";
+
+    private static final int DUPLICATE_KEY = 11000;
+    // Write errors caused by the state of the server or of the network, not by the sample itself:
+    // host unreachable/not found, time limits, network timeout, shutdown, primary stepdown, socket errors.
+    private static final Set<Integer> TRANSIENT_WRITE_ERRORS =
+            Set.of(6, 7, 50, 89, 91, 189, 262, 9001, 10107, 11600, 11602, 13435, 13436);
+
+    private record BucketKey(String hostname, long bucketStart) {
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final MetricNameDictionary metricNameDictionary;
+    private final boolean bucketMode;
+    private final long bucketSizeMs;
+
+    public MetricsRepositoryCustomImpl(MongoTemplate mongoTemplate, MetricNameDictionary metricNameDictionary,
+                                       @Value("${monitoring.metrics.storage:document}") String storage,
+                                       @Value("${monitoring.metrics.bucket-size-ms:3600000}") long bucketSizeMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.metricNameDictionary = metricNameDictionary;
+        this.bucketMode = STORAGE_BUCKET.equalsIgnoreCase(storage);
+        this.bucketSizeMs = bucketSizeMs;
+    }
+
+    /**
+     * Creates the index used by the range queries on the metrics collection and, in "bucket" mode,
+     * the unique index on (hostname, bucketStart) the appends rely on and the 30-day TTL index of the buckets.
+     */
+    @PostConstruct
+    public void ensureIndexes() {
+        try {
+            mongoTemplate.indexOps(Metrics.class).ensureIndex(new Index()
+                    .on("hostname", Sort.Direction.ASC)
+                    .on("timestamp", Sort.Direction.ASC)
+                    .named("metric_host_timestamp_idx"));
+            if (bucketMode) {
+                mongoTemplate.indexOps(MetricsBucket.class).ensureIndex(new Index()
+                        .on("hostname", Sort.Direction.ASC)
+                        .on("bucketStart", Sort.Direction.DESC)
+                        .unique()
+                        .named("bucket_host_start_idx"));
+                mongoTemplate.indexOps(MetricsBucket.class).ensureIndex(new Index()
+                        .on("bucketDate", Sort.Direction.ASC)
+                        .expire(Duration.ofDays(30))
+                        .named("bucket_expiration_idx"));
+            }
+        } catch (Exception e) {
+            log.error("Error creating the metrics indexes: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public BatchResult insertBatch(List<Metrics> batch) {
+        return bucketMode ? insertBuckets(batch) : insertDocuments(batch);
+    }
+
+    @Override
+    public Metrics findTopByHostnameOrderByTimestampDesc(String hostname) {
+        if (!bucketMode) {
+            Query query = new Query(Criteria.where("hostname").is(hostname))
+                    .with(Sort.by(Sort.Direction.DESC, "timestamp"))
+                    .limit(1);
+            Metrics metrics = mongoTemplate.findOne(query, Metrics.class);
+            return metrics != null ? metricNameDictionary.decode(metrics) : null;
+        }
+        Query query = new Query(Criteria.where("hostname").is(hostname))
+                .with(Sort.by(Sort.Direction.DESC, "bucketStart"))
+                .limit(1);
+        MetricsBucket bucket = mongoTemplate.findOne(query, MetricsBucket.class);
+        return bucket != null ? latestOf(bucket) : null;
+    }
+
+    @Override
+    public List<Metrics> findLatestPerHost(long since) {
+        List<Metrics> result = new ArrayList<>();
+        if (!bucketMode) {
+            Aggregation aggregation = Aggregation.newAggregation(
+                    Aggregation.match(Criteria.where("timestamp").gte(since)),
+                    Aggregation.sort(Sort.Direction.ASC, "timestamp"),
+                    Aggregation.group("hostname").last("$$ROOT").as("latest"))
+                    .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+            for (Document row : mongoTemplate.aggregate(aggregation, Metrics.class, Document.class)) {
+                result.add(metricNameDictionary.decode(
+                        mongoTemplate.getConverter().read(Metrics.class, row.get("latest", Document.class))));
+            }
+            return result;
+        }
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("bucketStart").gte(bucketStart(since))),
+                Aggregation.sort(Sort.Direction.ASC, "bucketStart"),
+                Aggregation.group("hostname").last("$$ROOT").as("latest"))
+                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+        for (Document row : mongoTemplate.aggregate(aggregation, MetricsBucket.class, Document.class)) {
+            Metrics latest = latestOf(mongoTemplate.getConverter().read(MetricsBucket.class, row.get("latest", Document.class)));
+            if (latest != null) {
+                result.add(latest);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Stream<Metrics> streamRange(String hostname, long from, long to) {
+        if (!bucketMode) {
+            Query query = new Query(Criteria.where("hostname").is(hostname).and("timestamp").gte(from).lt(to))
+                    .with(Sort.by(Sort.Direction.ASC, "timestamp"));
+            return mongoTemplate.stream(query, Metrics.class).map(metricNameDictionary::decode);
+        }
+        Query query = new Query(Criteria.where("hostname").is(hostname).and("bucketStart").gte(bucketStart(from)).lt(to))
+                .with(Sort.by(Sort.Direction.ASC, "bucketStart"));
+        Stream<MetricsBucket> buckets = mongoTemplate.stream(query, MetricsBucket.class);
+        return buckets
+                .flatMap(bucket -> samplesOf(bucket).stream())
+                .filter(metrics -> metrics.getTimestamp() >= from && metrics.getTimestamp() < to)
+                .onClose(buckets::close);
+    }
+
+    @Override
+    public Stream<Metrics> aggregateRange(String hostname, long from, long to, long step, String agg) {
+        if (bucketMode || "p95".equals(agg)) {
+            // Buckets cannot be grouped by an arbitrary step and $percentile needs MongoDB 7,
+            // so these cases are aggregated while streaming the samples (named values included).
+            return MetricsAggregator.aggregateSamples(streamRange(hostname, from, to), step, agg);
+        }
+        AggregationExpression stepStart = ArithmeticOperators.Subtract.valueOf("timestamp")
+                .subtract(ArithmeticOperators.Mod.valueOf("timestamp").mod(step));
+        GroupOperation group = Aggregation.group("step").last("hostname").as("hostname").last("ip").as("ip");
+        group = switch (agg) {
+            case "min" -> group.min("cpuUsage").as("cpuUsage").min("diskUsage").as("diskUsage").min("ramUsage").as("ramUsage");
+            case "max" -> group.max("cpuUsage").as("cpuUsage").max("diskUsage").as("diskUsage").max("ramUsage").as("ramUsage");
+            default -> group.avg("cpuUsage").as("cpuUsage").avg("diskUsage").as("diskUsage").avg("ramUsage").as("ramUsage");
+        };
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("hostname").is(hostname).and("timestamp").gte(from).lt(to)),
+                Aggregation.project("hostname", "ip", "cpuUsage", "diskUsage", "ramUsage").and(stepStart).as("step"),
+                group,
+                Aggregation.sort(Sort.Direction.ASC, "_id"))
+                .withOptions(Aggregation.newAggregationOptions().allowDiskUse(true).build());
+        // Only CPU/Disk/RAM are aggregated by the pipeline: the named values are returned by the
+        // raw, rollup and bucket queries.
+        return mongoTemplate.aggregateStream(aggregation, Metrics.class, Document.class)
+                .map(row -> Metrics.builder()
+                        .hostname(row.getString("hostname"))
+                        .ip(row.getString("ip"))
+                        .timestamp(row.get("_id", Number.class).longValue())
+                        .cpuUsage(row.get("cpuUsage", Number.class).doubleValue())
+                        .diskUsage(row.get("diskUsage", Number.class).doubleValue())
+                        .ramUsage(row.get("ramUsage", Number.class).doubleValue())
+                        .build());
+    }
+
+    /**
+     * Returns the start of the bucket containing the given timestamp.
+     */
+    private long bucketStart(long timestamp) {
+        return timestamp - Math.floorMod(timestamp, bucketSizeMs);
+    }
+
+    private BatchResult insertDocuments(List<Metrics> batch) {
+        try {
+            mongoTemplate.bulkOps(BulkMode.UNORDERED, Metrics.class)
+                    .insert(batch)
+                    .execute();
+            return BatchResult.WRITTEN;
+        } catch (BulkOperationException e) {
+            // Unordered bulk: everything but the failed inserts is already stored.
+            // A duplicate key means the sample was stored by an earlier attempt.
+            return failures(e, index -> List.of(batch.get(index)), false);
+        }
+    }
+
+    /**
+     * Splits the failed operations of an unordered bulk into the samples to retry and the dropped ones.
+     *
+     * @param samplesOf        The samples written by the operation at the given index.
+     * @param retryDuplicates  Whether a duplicate key error may succeed on retry (a concurrent bucket upsert)
+     *                         rather than meaning the sample is already stored.
+     */
+    private BatchResult failures(BulkOperationException e, IntFunction<List<Metrics>> samplesOf, boolean retryDuplicates) {
+        List<Metrics> retryable = new ArrayList<>();
+        int dropped = 0;
+        BulkWriteError firstDropped = null;
+        for (BulkWriteError error : e.getErrors()) {
+            if (error.getCode() == DUPLICATE_KEY && !retryDuplicates) {
+                continue;
+            }
+            List<Metrics> samples = samplesOf.apply(error.getIndex());
+            if (TRANSIENT_WRITE_ERRORS.contains(error.getCode()) || error.getCode() == DUPLICATE_KEY) {
+                retryable.addAll(samples);
+            } else {
+                dropped += samples.size();
+                if (firstDropped == null) {
+                    firstDropped = error;
+                }
+            }
+        }
+        if (firstDropped != null) {
+            log.error("Dropping {} metrics samples that cannot be written (error {}: {})",
+                    dropped, firstDropped.getCode(), firstDropped.getMessage());
+        }
+        return new BatchResult(retryable, dropped);
+    }
+
+    @Override
+    public List<Metrics> insertMigratedBatch(List<Metrics> batch) {
+        Map<BucketKey, List<Metrics>> groups = groupByBucket(batch);
+
+        // Skip the samples already appended by an earlier run that stopped before its checkpoint.
+        Query existing = new Query(new Criteria().orOperator(groups.keySet().stream()
+                .map(key -> Criteria.where("hostname").is(key.hostname()).and("bucketStart").is(key.bucketStart()))
+                .toArray(Criteria[]::new)));
+        existing.fields().include("hostname", "bucketStart", "migratedUpTo");
+        for (MetricsBucket bucket : mongoTemplate.find(existing, MetricsBucket.class)) {
+            ObjectId migratedUpTo = bucket.getMigratedUpTo();
+            List<Metrics> samples = groups.get(new BucketKey(bucket.getHostname(), bucket.getBucketStart()));
+            if (migratedUpTo != null && samples != null) {
+                samples.removeIf(metrics -> new ObjectId(metrics.getId()).compareTo(migratedUpTo) <= 0);
+            }
+        }
+        groups.values().removeIf(List::isEmpty);
+        if (groups.isEmpty()) {
+            return List.of();
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, MetricsBucket.class);
+        List<List<Metrics>> operations = new ArrayList<>(groups.size());
+        groups.forEach((key, samples) -> {
+            // Appending and moving the marker in the same update keeps them consistent.
+            Update update = appendUpdate(key.bucketStart(), samples)
+                    .max("migratedUpTo", new ObjectId(samples.get(samples.size() - 1).getId()));
+            bulk.upsert(Query.query(Criteria.where("hostname").is(key.hostname()).and("bucketStart").is(key.bucketStart())),
+                    update);
+            operations.add(samples);
+        });
+        try {
+            bulk.execute();
+            return List.of();
+        } catch (BulkOperationException e) {
+            List<Metrics> failed = new ArrayList<>();
+            e.getErrors().forEach(error -> failed.addAll(operations.get(error.getIndex())));
+            return failed;
+        }
+    }
+
+    private Map<BucketKey, List<Metrics>> groupByBucket(List<Metrics> batch) {
+        Map<BucketKey, List<Metrics>> groups = new LinkedHashMap<>();
+        for (Metrics metrics : batch) {
+            BucketKey key = new BucketKey(metrics.getHostname(), bucketStart(metrics.getTimestamp()));
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(metrics);
+        }
+        return groups;
+    }
+
+    private BatchResult insertBuckets(List<Metrics> batch) {
+        Map<BucketKey, List<Metrics>> groups = groupByBucket(batch);
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, MetricsBucket.class);
+        List<List<Metrics>> operations = new ArrayList<>(groups.size());
+        groups.forEach((key, samples) -> {
+            bulk.upsert(Query.query(Criteria.where("hostname").is(key.hostname()).and("bucketStart").is(key.bucketStart())),
+                    appendUpdate(key.bucketStart(), samples));
+            operations.add(samples);
+        });
+        try {
+            bulk.execute();
+            return BatchResult.WRITTEN;
+        } catch (BulkOperationException e) {
+            // A duplicate key is another node creating the same bucket: the retry appends to it.
+            return failures(e, operations::get, true);
+        }
+    }
+
+    private Update appendUpdate(long bucketStart, List<Metrics> samples) {
+        int size = samples.size();
+        Integer[] offsets = new Integer[size];
+        Double[] cpu = new Double[size];
+        Double[] disk = new Double[size];
+        Double[] ram = new Double[size];
+        Object[] values = new Object[size];
+        for (int i = 0; i < size; i++) {
+            Metrics metrics = samples.get(i);
+            offsets[i] = (int) (metrics.getTimestamp() - bucketStart);
+            cpu[i] = metrics.getCpuUsage();
+            disk[i] = metrics.getDiskUsage();
+            ram[i] = metrics.getRamUsage();
+            // One entry per sample, even when empty, so it stays aligned with the other arrays.
+            values[i] = metrics.getEncodedValues() != null ? new Document(metrics.getEncodedValues()) : new Document();
+        }
+        Update update = new Update()
+                .setOnInsert("bucketDate", new Date(bucketStart))
+                .set("ip", samples.get(size - 1).getIp())
+                .inc("count", size);
+        update.push("offsets").each((Object[]) offsets);
+        update.push("cpu").each((Object[]) cpu);
+        update.push("disk").each((Object[]) disk);
+        update.push("ram").each((Object[]) ram);
+        update.push("values").each(values);
+        return update;
+    }
+
+    /**
+     * Expands a bucket into one Metrics object per sample, ordered by timestamp.
+     */
+    private List<Metrics> samplesOf(MetricsBucket bucket) {
+        int[] offsets = bucket.getOffsets();
+        if (offsets == null) {
+            return List.of();
+        }
+        List<Metrics> samples = new ArrayList<>(offsets.length);
+        for (int i = 0; i < offsets.length; i++) {
+            samples.add(sampleAt(bucket, i));
+        }
+        samples.sort(Comparator.comparingLong(Metrics::getTimestamp));
+        return samples;
+    }
+
+    private Metrics latestOf(MetricsBucket bucket) {
+        int[] offsets = bucket.getOffsets();
+        if (offsets == null || offsets.length == 0) {
+            return null;
+        }
+        // Samples may have been appended out of order, so look for the largest offset.
+        int latest = 0;
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] >= offsets[latest]) {
+                latest = i;
+            }
+        }
+        return sampleAt(bucket, latest);
+    }
+
+    private Metrics sampleAt(MetricsBucket bucket, int i) {
+        Metrics metrics = Metrics.builder()
+                .hostname(bucket.getHostname())
+                .ip(bucket.getIp())
+                .timestamp(bucket.getBucketStart() + bucket.getOffsets()[i])
+                .cpuUsage(bucket.getCpu()[i])
+                .diskUsage(bucket.getDisk()[i])
+                .ramUsage(bucket.getRam()[i])
+                .build();
+        // Buckets started before named values existed have no (or a shorter) values array: skip it.
+        List<Map<String, Double>> values = bucket.getValues();
+        if (values != null && values.size() == bucket.getOffsets().length) {
+            metrics.setEncodedValues(values.get(i));
+            metricNameDictionary.decode(metrics);
+        }
+        return metrics;
+    }
+}
@@ -1,34 +1,158 @@
 package org.cheetah.monitoring.services;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.Document;
 import org.cheetah.monitoring.model.AgentInfo;
-import org.cheetah.monitoring.repositories.AgentInfoRepository;
+import org.cheetah.monitoring.model.dto.BulkRegistrationResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import com.mongodb.bulk.BulkWriteResult;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
 @Service
+@Slf4j
 public class AgentRegistrationService {
 
     @Autowired
-    private AgentInfoRepository agentInfoRepository;
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private HeartbeatTracker heartbeatTracker;
+
+    @Value("${monitoring.agents.remove-duplicates:false}")
+    private boolean removeDuplicates;
+
+    /**
+     * Creates the unique (ip, hostname) index of the agents collection.
+     * Duplicates left by concurrent registrations before the index existed are logged, and the index is not
+     * created while they exist. They are removed (keeping the most recently registered document of each agent)
+     * only when monitoring.agents.remove-duplicates is enabled.
+     */
+    @PostConstruct
+    public void ensureUniqueIndex() {
+        try {
+            Aggregation duplicates = Aggregation.newAggregation(
+                    Aggregation.sort(Sort.Direction.DESC, "timestamp"),
+                    Aggregation.group("ip", "hostname").push("_id").as("ids").count().as("count"),
+                    Aggregation.match(Criteria.where("count").gt(1)));
+            int groups = 0;
+            for (Document group : mongoTemplate.aggregate(duplicates, AgentInfo.class, Document.class)) {
+                List<Object> ids = new ArrayList<>(group.getList("ids", Object.class));
+                Object kept = ids.remove(0);
+                if (removeDuplicates) {
+                    mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), AgentInfo.class);
+                    log.warn("Removed {} duplicate agent documents for {}, kept {}", ids.size(), group.get("_id"), kept);
+                } else {
+                    log.warn("Duplicate agent documents for {}: {} (most recent: {})", group.get("_id"), ids, kept);
+                    groups++;
+                }
+            }
+            if (groups > 0) {
+                log.error("The unique agent index was not created: {} agents have duplicate documents. "
+                        + "Remove them, or restart once with monitoring.agents.remove-duplicates=true", groups);
+                return;
+            }
+            mongoTemplate.indexOps(AgentInfo.class).ensureIndex(new Index()
+                    .on("ip", Sort.Direction.ASC)
+                    .on("hostname", Sort.Direction.ASC)
+                    .unique()
+                    .named("agent_ip_hostname_idx"));
+        } catch (Exception e) {
+            log.error("Error creating the unique agent index: {}", e.getMessage());
+        }
+    }
 
     /**
-     * Registers or updates an agent's information.
-     * If an agent with the same IP and hostname already exists, its information is updated.
+     * Registers or updates an agent's information with a single atomic upsert on (ip, hostname):
+     * if the agent already exists only the fields sent by the agent (and lastSeen, lastHeartbeat) are updated,
+     * otherwise it is created. The unique index guarantees concurrent registrations never create duplicates.
      *
      * @param agentInfo The registration data sent by the agent.
      * @return The saved or updated AgentInfo object.
      */
     public AgentInfo registerAgent(AgentInfo agentInfo) {
-        AgentInfo existingAgent = agentInfoRepository.findByIpAndHostname(agentInfo.getIp(), agentInfo.getHostname());
-        if (existingAgent != null) {
-            // Update existing record
-            existingAgent.setOpenPorts(agentInfo.getOpenPorts());
-            existingAgent.setTimestamp(agentInfo.getTimestamp());
-            existingAgent.setAgentPort(agentInfo.getAgentPort());
-            return agentInfoRepository.save(existingAgent);
-        } else {
-            // Create new record
-            return agentInfoRepository.save(agentInfo);
+        heartbeatTracker.registered(agentInfo.getHostname(), agentInfo.getIp());
+        long now = System.currentTimeMillis();
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        try {
+            return mongoTemplate.findAndModify(byIpAndHostname(agentInfo), registration(agentInfo, now), options, AgentInfo.class);
+        } catch (DuplicateKeyException e) {
+            // Two upserts of the same new agent raced: the other one inserted it, so this one can only update.
+            return mongoTemplate.findAndModify(byIpAndHostname(agentInfo), registration(agentInfo, now), options, AgentInfo.class);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Registers or updates many agents at once with a single unordered bulk of upserts,
+     * e.g. for mass rollouts after a datacenter restart. Agents without ip or hostname are skipped.
+     *
+     * @param agents The registration data of the agents.
+     * @return how many agents were inserted, updated or failed.
+     */
+    public BulkRegistrationResponse registerAgents(List<AgentInfo> agents) {
+        long now = System.currentTimeMillis();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, AgentInfo.class);
+        int valid = 0;
+        for (AgentInfo agentInfo : agents) {
+            if (agentInfo.getIp() == null || agentInfo.getHostname() == null) {
+                continue;
+            }
+            heartbeatTracker.registered(agentInfo.getHostname(), agentInfo.getIp());
+            bulk.upsert(byIpAndHostname(agentInfo), registration(agentInfo, now));
+            valid++;
+        }
+        if (valid == 0) {
+            return new BulkRegistrationResponse(agents.size(), 0, 0, agents.size());
+        }
+        BulkWriteResult result;
+        try {
+            result = bulk.execute();
+        } catch (BulkOperationException e) {
+            // Unordered: the other upserts were applied; failures are typically duplicate keys of agents
+            // repeated in the same request or racing with another registration.
+            result = e.getResult();
+            log.warn("{} of {} bulk agent registrations failed", e.getErrors().size(), valid);
+        }
+        return toResponse(agents.size(), result);
+    }
+
+    /**
+     * Builds the bulk registration counts from the result of the bulk write.
+     */
+    static BulkRegistrationResponse toResponse(int received, BulkWriteResult result) {
+        int inserted = result.getUpserts().size();
+        int updated = result.getMatchedCount();
+        return new BulkRegistrationResponse(received, inserted, updated, received - inserted - updated);
+    }
+
+    static Query byIpAndHostname(AgentInfo agentInfo) {
+        return Query.query(Criteria.where("ip").is(agentInfo.getIp()).and("hostname").is(agentInfo.getHostname()));
+    }
+
+    static Update registration(AgentInfo agentInfo, long now) {
+        return new Update()
+                .set("openPorts", agentInfo.getOpenPorts())
+                .set("timestamp", agentInfo.getTimestamp())
+                .set("agentPort", agentInfo.getAgentPort())
+                .set("lastSeen", now)
+                .max("lastHeartbeat", now);
+    }
+}
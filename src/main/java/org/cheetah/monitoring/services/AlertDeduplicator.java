@@ -0,0 +1,193 @@
+package org.cheetah.monitoring.services;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.cheetah.monitoring.model.Alert;
+import org.cheetah.monitoring.model.AlertReservation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Enforces the "at most one alert every 24 hours" rule for each (ip, metricType, port) across all the monitoring nodes.
+ * Sending an alert reserves the issue in the alertReservations collection with an atomic upsert on its id,
+ * so two nodes (or two concurrent samples) cannot both send it, and the suppression survives restarts.
+ * Issues known to be reserved are remembered locally for monitoring.alerts.local-cache-ms, so repeated
+ * checks of an issue that is already suppressed are a map lookup instead of a round-trip to MongoDB.
+ * Alerts sent before the reservations existed are loaded once at startup (see seedFromAlerts).
+ */
+@Component
+@Slf4j
+public class AlertDeduplicator {
+
+    /**
+     * Identifies an alertable issue. Port is null for non-port alerts.
+     */
+    public record AlertKey(String ip, String metricType, Integer port) {
+
+        private String id() {
+            return ip + "|" + metricType + "|" + (port != null ? port : "");
+        }
+    }
+
+    private static final String MIGRATIONS_COLLECTION = "migrations";
+    private static final String SEED_ID = "alert-reservations";
+
+    private final MongoTemplate mongoTemplate;
+    private final NodeIdentity nodeIdentity;
+    // Time until which the issue is known to be reserved, by this node or another one.
+    private final Map<AlertKey, Long> reservedUntil = new ConcurrentHashMap<>();
+
+    @Value("${monitoring.alerts.suppression-ms:86400000}")
+    private long suppressionMs;
+
+    @Value("${monitoring.alerts.local-cache-ms:60000}")
+    private long localCacheMs;
+
+    public AlertDeduplicator(MongoTemplate mongoTemplate, NodeIdentity nodeIdentity) {
+        this.mongoTemplate = mongoTemplate;
+        this.nodeIdentity = nodeIdentity;
+    }
+
+    /**
+     * Creates the TTL index that removes the reservations once their suppression window is over,
+     * then seeds the reservations from the alerts collection.
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            mongoTemplate.indexOps(AlertReservation.class).ensureIndex(new Index()
+                    .on("expireAt", Sort.Direction.ASC)
+                    .expire(0)
+                    .named("alert_reservation_expiration_idx"));
+        } catch (Exception e) {
+            log.error("Error creating the alert reservation index: {}", e.getMessage());
+        }
+        try {
+            seedFromAlerts();
+        } catch (Exception e) {
+            log.error("Error seeding the alert reservations: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Reserves the issues of the alerts sent within the suppression window, so upgrading from a version
+     * without reservations does not send them again. Each alert goes through the same upsert as tryAcquire,
+     * so the oldest alert of an issue wins and nodes seeding concurrently (or a seeding interrupted and run
+     * again) reserve each issue once. Done once per cluster: a marker in the migrations collection keeps
+     * later restarts from reserving again issues released since.
+     */
+    private void seedFromAlerts() {
+        if (mongoTemplate.exists(Query.query(Criteria.where("_id").is(SEED_ID)), MIGRATIONS_COLLECTION)) {
+            return;
+        }
+        Query recent = Query.query(Criteria.where("timestamp").gt(System.currentTimeMillis() - suppressionMs))
+                .with(Sort.by(Sort.Direction.ASC, "timestamp"));
+        recent.fields().include("ip", "metricType", "port", "timestamp");
+        int seeded = 0;
+        try (Stream<Alert> alerts = mongoTemplate.stream(recent, Alert.class)) {
+            for (Alert alert : (Iterable<Alert>) alerts::iterator) {
+                if (alert.getIp() == null || alert.getMetricType() == null) {
+                    continue;
+                }
+                try {
+                    reserve(new AlertKey(alert.getIp(), alert.getMetricType(), alert.getPort()), alert.getTimestamp());
+                    seeded++;
+                } catch (DuplicateKeyException e) {
+                    // Already reserved, by an earlier alert or another node.
+                }
+            }
+        }
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(SEED_ID)),
+                new Update().set("seeded", seeded).set("at", new Date()), MIGRATIONS_COLLECTION);
+        log.info("Seeded {} alert reservations from the alerts of the last {} ms", seeded, suppressionMs);
+    }
+
+    /**
+     * Atomically checks whether an alert for the given issue may be sent now and, if so,
+     * reserves it for the suppression window.
+     *
+     * @param ip         The IP address of the host.
+     * @param metricType The metric type (e.g., "CPU", "PORT", "AGENT").
+     * @param port       The port, or null if not applicable.
+     * @return true if no alert was sent within the suppression window and the caller should send one.
+     */
+    public boolean tryAcquire(String ip, String metricType, Integer port) {
+        long now = System.currentTimeMillis();
+        AlertKey key = new AlertKey(ip, metricType, port);
+        Long until = reservedUntil.get(key);
+        if (until != null && now < until) {
+            return false;
+        }
+        long expiresAt = now + suppressionMs;
+        try {
+            reserve(key, now);
+            reservedUntil.put(key, Math.min(expiresAt, now + localCacheMs));
+            return true;
+        } catch (DuplicateKeyException e) {
+            // Reserved by an earlier alert, possibly sent by another node.
+            reservedUntil.put(key, Math.min(expiresAt, now + localCacheMs));
+            return false;
+        } catch (Exception e) {
+            // Better a duplicate alert than a lost one; the local entry still limits it to one per node.
+            log.error("Error reserving alert {}: {}", key, e.getMessage());
+            reservedUntil.put(key, expiresAt);
+            return true;
+        }
+    }
+
+    /**
+     * Reserves the issue for the suppression window starting at sentAt.
+     *
+     * @throws DuplicateKeyException if the issue is still reserved at sentAt.
+     */
+    private void reserve(AlertKey key, long sentAt) {
+        long expiresAt = sentAt + suppressionMs;
+        // Matches only an expired reservation: if a live one exists, the upsert collides on the id.
+        Query query = Query.query(Criteria.where("_id").is(key.id()).and("expiresAt").lte(sentAt));
+        Update update = new Update()
+                .set("nodeId", nodeIdentity.getNodeId())
+                .set("sentAt", sentAt)
+                .set("expiresAt", expiresAt)
+                .set("expireAt", new Date(expiresAt));
+        mongoTemplate.findAndModify(query, update,
+                FindAndModifyOptions.options().upsert(true).returnNew(true), AlertReservation.class);
+    }
+
+    /**
+     * Forgets the last alert of the given issue, e.g. once it recovered, so a new occurrence alerts immediately.
+     * Other nodes may still suppress it for up to monitoring.alerts.local-cache-ms.
+     */
+    public void release(String ip, String metricType, Integer port) {
+        AlertKey key = new AlertKey(ip, metricType, port);
+        reservedUntil.remove(key);
+        try {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(key.id())), AlertReservation.class);
+        } catch (Exception e) {
+            log.error("Error releasing alert {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Drops expired local entries so the map does not grow forever.
+     */
+    @Scheduled(fixedDelay = 3600000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        reservedUntil.values().removeIf(until -> until <= now);
+    }
+}
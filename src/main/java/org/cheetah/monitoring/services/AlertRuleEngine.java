@@ -0,0 +1,247 @@
+package org.cheetah.monitoring.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.cheetah.monitoring.model.Metrics;
+import org.cheetah.monitoring.model.Threshold;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Streaming evaluation of the alert rules stored with the thresholds.
+ * Every (host, metric) has a small ring buffer of its latest samples with a running sum, so the average
+ * over a duration window, the rate of change, the consecutive-samples counters and the firing state
+ * are all updated in O(1) (amortized) per incoming sample, without querying MongoDB.
+ * Only transitions are reported: a rule fires once, and recovers once, with hysteresis in between.
+ * A recovery is reported only if the listener delivered the alert of the firing transition.
+ * <p>
+ * The state lives in the memory of this node and is built only from the samples it receives: windowed,
+ * rate and consecutive-sample rules assume all samples of a host reach the same node (e.g. with sticky
+ * load balancing by host), and the state starts empty after a restart.
+ */
+@Component
+public class AlertRuleEngine {
+
+    /**
+     * Receives the rule transitions of a sample.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param metric The metric name.
+         * @param value  The evaluated value (the window average when the rule has a window).
+         * @param rule   The rule that changed state.
+         * @param firing true when the rule starts firing, false when it recovers.
+         * @return for a firing transition, whether the alert was delivered (false if it was suppressed);
+         *         ignored for a recovery.
+         */
+        boolean onTransition(String metric, double value, Threshold rule, boolean firing);
+    }
+
+    // Rules applied when no threshold is configured: the historical defaults.
+    private static final Map<String, Threshold> DEFAULTS = Map.of(
+            Metrics.CPU, Threshold.builder().metricType(Metrics.CPU).thresholdValue(95.0).build(),
+            Metrics.DISK, Threshold.builder().metricType(Metrics.DISK).thresholdValue(85.0).build(),
+            Metrics.RAM, Threshold.builder().metricType(Metrics.RAM).thresholdValue(80.0).build());
+
+    /**
+     * Rule state of one metric of one host. Guarded by its own monitor.
+     */
+    private static final class RuleState {
+        // Ring buffer of the samples in the window, oldest at head.
+        private long[] timestamps;
+        private double[] values;
+        private int head;
+        private int size;
+        private double sum;
+        private long lastTimestamp = Long.MIN_VALUE;
+        private long lastUpdate;
+        // Consecutive samples meeting the fire (or, while firing, the recovery) condition.
+        private int streak;
+        private boolean firing;
+        // Whether the alert of the current firing was delivered, so its recovery must be notified.
+        private boolean notified;
+
+        private void ensureCapacity(int capacity) {
+            if (values == null || values.length != capacity) {
+                timestamps = new long[capacity];
+                values = new double[capacity];
+                head = 0;
+                size = 0;
+                sum = 0;
+            }
+        }
+
+        private void add(long timestamp, double value) {
+            if (size == values.length) {
+                evict();
+            }
+            int tail = (head + size) % values.length;
+            timestamps[tail] = timestamp;
+            values[tail] = value;
+            sum += value;
+            size++;
+            lastTimestamp = timestamp;
+        }
+
+        private void evictBefore(long timestamp) {
+            // Keep at least the new sample.
+            while (size > 1 && timestamps[head] < timestamp) {
+                evict();
+            }
+        }
+
+        private void evict() {
+            sum -= values[head];
+            head = (head + 1) % values.length;
+            size--;
+        }
+
+        private double average() {
+            return sum / size;
+        }
+
+        /**
+         * Growth per minute between the oldest and the newest sample, or NaN with a single sample.
+         */
+        private double ratePerMinute() {
+            if (size < 2) {
+                return Double.NaN;
+            }
+            int newest = (head + size - 1) % values.length;
+            long elapsed = timestamps[newest] - timestamps[head];
+            return elapsed > 0 ? (values[newest] - values[head]) * 60000.0 / elapsed : Double.NaN;
+        }
+    }
+
+    private final Map<String, Map<String, RuleState>> states = new ConcurrentHashMap<>();
+    private final ThresholdCache thresholdCache;
+
+    @Value("${monitoring.alerts.rules.max-window-samples:512}")
+    private int maxWindowSamples;
+
+    @Value("${monitoring.alerts.rules.state-expiry-ms:3600000}")
+    private long stateExpiryMs;
+
+    public AlertRuleEngine(ThresholdCache thresholdCache) {
+        this.thresholdCache = thresholdCache;
+    }
+
+    /**
+     * Returns the rule of the given metric: its threshold (exact or base name), else the default, else null.
+     */
+    public Threshold ruleFor(String metric) {
+        Threshold threshold = thresholdCache.find(metric);
+        return threshold != null ? threshold : DEFAULTS.get(metric);
+    }
+
+    /**
+     * Adds every metric of the sample to its rule state and reports the rules that started firing or recovered.
+     * Samples older than the latest one already seen for the same host and metric are ignored.
+     */
+    public void evaluate(Metrics metrics, Listener listener) {
+        if (metrics.getHostname() == null) {
+            return;
+        }
+        Map<String, RuleState> host = states.computeIfAbsent(metrics.getHostname(), h -> new ConcurrentHashMap<>());
+        metrics.forEachValue((metric, value) -> {
+            Threshold rule = ruleFor(metric);
+            if (rule == null) {
+                return;
+            }
+            RuleState state = host.computeIfAbsent(metric, m -> new RuleState());
+            double evaluated;
+            boolean firing;
+            synchronized (state) {
+                if (metrics.getTimestamp() < state.lastTimestamp) {
+                    return;
+                }
+                evaluated = update(state, rule, metrics.getTimestamp(), value);
+                if (!step(state, rule, evaluated)) {
+                    return;
+                }
+                firing = state.firing;
+                if (!firing) {
+                    // Recover only what was notified, and only once.
+                    boolean notified = state.notified;
+                    state.notified = false;
+                    if (!notified) {
+                        return;
+                    }
+                }
+            }
+            // Outside the lock: the listener sends notifications.
+            boolean delivered = listener.onTransition(metric, evaluated, rule, firing);
+            if (firing && delivered) {
+                synchronized (state) {
+                    // Unless it already recovered meanwhile.
+                    state.notified = state.firing;
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds the sample to the window and returns the value to compare: the window average or the sample itself.
+     */
+    private double update(RuleState state, Threshold rule, long timestamp, double value) {
+        Long windowMs = rule.getWindowMs();
+        boolean windowed = windowMs != null && windowMs > 0;
+        // Without a window only the previous sample is needed, for the rate of change.
+        state.ensureCapacity(windowed ? maxWindowSamples : 2);
+        state.lastUpdate = System.currentTimeMillis();
+        state.add(timestamp, value);
+        if (windowed) {
+            state.evictBefore(timestamp - windowMs);
+            return state.average();
+        }
+        return value;
+    }
+
+    /**
+     * Advances the streak of the rule and flips its state when the required number of consecutive
+     * samples is reached. Returns true on a transition.
+     */
+    private boolean step(RuleState state, Threshold rule, double value) {
+        Double minRate = rule.getMinRatePerMinute();
+        boolean rateMet = minRate == null || state.ratePerMinute() >= minRate;
+        boolean met;
+        if (!state.firing) {
+            met = value >= rule.getThresholdValue() && rateMet;
+        } else if (minRate != null && rule.getThresholdValue() <= 0) {
+            // Pure rate-of-change rule: there is no value to recover below, it recovers when the growth stops.
+            met = !rateMet;
+        } else {
+            // Hysteresis: a firing rule recovers only below the recovery value (never above the threshold).
+            // The rate only gates firing: a value that stops growing but stays high is still a problem.
+            double recovery = rule.getRecoveryValue() != null
+                    ? Math.min(rule.getRecoveryValue(), rule.getThresholdValue())
+                    : rule.getThresholdValue();
+            met = value < recovery;
+        }
+        state.streak = met ? state.streak + 1 : 0;
+        int required = rule.getConsecutiveSamples() != null ? Math.max(1, rule.getConsecutiveSamples()) : 1;
+        if (state.streak < required) {
+            return false;
+        }
+        state.firing = !state.firing;
+        state.streak = 0;
+        return true;
+    }
+
+    /**
+     * Drops the state of metrics that stopped reporting, so the map does not grow forever.
+     */
+    @Scheduled(fixedDelayString = "${monitoring.alerts.rules.state-expiry-ms:3600000}")
+    public void evictIdle() {
+        long since = System.currentTimeMillis() - stateExpiryMs;
+        states.values().forEach(host -> host.values().removeIf(state -> {
+            synchronized (state) {
+                return state.lastUpdate < since;
+            }
+        }));
+        states.values().removeIf(Map::isEmpty);
+    }
+}
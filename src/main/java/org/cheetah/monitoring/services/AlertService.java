@@ -1,98 +1,94 @@
 package org.cheetah.monitoring.services;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.Instant;
 import java.util.Date;
 
 import org.cheetah.monitoring.model.Alert;
 import org.cheetah.monitoring.model.Metrics;
 import org.cheetah.monitoring.model.Threshold;
+import org.cheetah.monitoring.model.dto.CustomAlertRequest;
 import org.cheetah.monitoring.repositories.AlertRepository;
-import org.cheetah.monitoring.repositories.ThresholdRepository;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.cheetah.monitoring.utils.LogExcerpt;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import lombok.extern.slf4j.Slf4j;
+
 @Service
+@Slf4j
 public class AlertService {
 
-    @Value("${telegram.bot.token}")
-    private String telegramBotToken;
+    private final AlertRepository alertRepository;
 
-    @Value("${telegram.chat.id}")
-    private String telegramChatId;
+    private final AlertRuleEngine alertRuleEngine;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final AlertDeduplicator alertDeduplicator;
 
-    private final AlertRepository alertRepository;
+    private final TelegramDeliveryService telegramDeliveryService;
 
-	private final ThresholdRepository thresholdRepository;
+    private final TelegramDocumentService telegramDocumentService;
 
-    public AlertService(AlertRepository alertRepository,ThresholdRepository thresholdRepository) {
+    public AlertService(AlertRepository alertRepository, AlertRuleEngine alertRuleEngine,
+                        AlertDeduplicator alertDeduplicator, TelegramDeliveryService telegramDeliveryService,
+                        TelegramDocumentService telegramDocumentService) {
         this.alertRepository = alertRepository;
-		this.thresholdRepository = thresholdRepository;
+        this.alertRuleEngine = alertRuleEngine;
+        this.alertDeduplicator = alertDeduplicator;
+        this.telegramDeliveryService = telegramDeliveryService;
+        this.telegramDocumentService = telegramDocumentService;
     }
 
     /**
-     * Checks each metric (CPU, Disk, RAM) and sends an alert via Telegram if a threshold is exceeded.
-     * For each IP and metric type, an alert is sent only if no alert has been sent in the last 24 hours.
+     * Feeds every metric of the sample (CPU, Disk, RAM and the named values) to the AlertRuleEngine and
+     * notifies via Telegram the rules that started firing or recovered. CPU, Disk and RAM fall back to
+     * default thresholds; the named values are only checked when a threshold exists for their exact name
+     * or for their base name (without tags).
+     * For each IP and metric type, an alert is sent only if no alert has been sent in the last 24 hours
+     * or since the previous alert recovered. A recovery is notified only for an alert that was sent.
      *
      * @param metrics The metrics data to check.
      */
     public void checkAndSendAlerts(Metrics metrics) {
-        // Retrieve thresholds from database. If not present, use defaults.
-        Threshold cpuThreshold = thresholdRepository.findByMetricType("CPU");
-        double cpuLimit = cpuThreshold != null ? cpuThreshold.getThresholdValue() : 95.0;
-        if (metrics.getCpuUsage() >= cpuLimit) {
-            checkAndSendAlertForMetric("CPU", metrics);
-        }
-
-        Threshold diskThreshold = thresholdRepository.findByMetricType("Disk");
-        double diskLimit = diskThreshold != null ? diskThreshold.getThresholdValue() : 85.0;
-        if (metrics.getDiskUsage() >= diskLimit) {
-            checkAndSendAlertForMetric("Disk", metrics);
-        }
+        alertRuleEngine.evaluate(metrics, (metricType, value, rule, firing) -> {
+            if (firing) {
+                return checkAndSendAlertForMetric(metricType, value, rule, metrics);
+            }
+            sendRecovery(metricType, value, metrics);
+            return true;
+        });
+    }
 
-        Threshold ramThreshold = thresholdRepository.findByMetricType("RAM");
-        double ramLimit = ramThreshold != null ? ramThreshold.getThresholdValue() : 80.0;
-        if (metrics.getRamUsage() >= ramLimit) {
-            checkAndSendAlertForMetric("RAM", metrics);
-        }
+    private static boolean isUsage(String metricType) {
+        return Metrics.CPU.equals(metricType) || Metrics.DISK.equals(metricType) || Metrics.RAM.equals(metricType);
     }
 
-    
-    
-    
     /**
-     * Checks and sends an alert for the specified metric type if the threshold is exceeded,
+     * Sends an alert for the specified metric type whose rule started firing,
      * ensuring that no alert has been sent in the last 24 hours for the same IP and metric type.
      *
-     * @param metricType The metric type (e.g., "CPU", "Disk", "RAM").
-     * @param metrics    The metrics data.
+     * @param metricType  The metric type (e.g., "CPU", "Disk", "RAM", "disk_used_pct{mount=/var}").
+     * @param metricValue The evaluated value (the window average for windowed rules).
+     * @param rule        The rule that fired.
+     * @param metrics     The metrics data.
+     * @return true if the alert was sent, false if it was suppressed.
      */
-    private void checkAndSendAlertForMetric(String metricType, Metrics metrics) {
-        // Calculate timestamp for 24 hours ago
-        long twentyFourHoursAgo = Instant.now().minusSeconds(24 * 3600).toEpochMilli();
-
-        // Retrieve the most recent alert for the given IP and metric type
-        Alert lastAlert = alertRepository.findTopByIpAndMetricTypeOrderByTimestampDesc(metrics.getIp(), metricType);
-        if (lastAlert != null && lastAlert.getTimestamp() > twentyFourHoursAgo) {
-            // An alert has already been sent within the last 24 hours; do not send a new one.
-            return;
+    private boolean checkAndSendAlertForMetric(String metricType, double metricValue, Threshold rule, Metrics metrics) {
+        // Atomically reserve the alert; fails if one has already been sent within the last 24 hours.
+        if (!alertDeduplicator.tryAcquire(metrics.getIp(), metricType, null)) {
+            return false;
         }
 
-        // Get the metric value for the given metric type
-        double metricValue = getMetricValue(metricType, metrics);
-
         // Compose the alert message
-        String message = String.format("Alert! %s (%s) has high %s usage: %.2f%%",
-                metrics.getHostname(), metrics.getIp(), metricType, metricValue);
+        String message = isUsage(metricType)
+                ? String.format("Alert! %s (%s) has high %s usage: %.2f%%",
+                        metrics.getHostname(), metrics.getIp(), metricType, metricValue)
+                : String.format("Alert! %s (%s) has high %s: %.2f",
+                        metrics.getHostname(), metrics.getIp(), metricType, metricValue);
+        if (rule.getWindowMs() != null && rule.getWindowMs() > 0) {
+            message += String.format(" (average over %ds)", rule.getWindowMs() / 1000);
+        }
 
         // Send the alert via Telegram
         sendCustomTelegramAlert(metricType, message);
@@ -106,68 +102,81 @@ public class AlertService {
                 .timestamp(Instant.now().toEpochMilli())
                 .build();
         alertRepository.save(alertRecord);
+        return true;
     }
 
     /**
-     * Returns the value of the specified metric from the metrics data.
-     *
-     * @param metricType The metric type (e.g., "CPU", "Disk", "RAM").
-     * @param metrics    The metrics data.
-     * @return The metric value.
+     * Notifies that a firing rule whose alert was sent recovered and lets the next occurrence alert immediately.
      */
-    private double getMetricValue(String metricType, Metrics metrics) {
-        switch (metricType) {
-            case "CPU":
-                return metrics.getCpuUsage();
-            case "Disk":
-                return metrics.getDiskUsage();
-            case "RAM":
-                return metrics.getRamUsage();
-            default:
-                return 0.0;
-        }
+    private void sendRecovery(String metricType, double metricValue, Metrics metrics) {
+        alertDeduplicator.release(metrics.getIp(), metricType, null);
+        String message = isUsage(metricType)
+                ? String.format("Resolved: %s (%s) %s usage is back to %.2f%%",
+                        metrics.getHostname(), metrics.getIp(), metricType, metricValue)
+                : String.format("Resolved: %s (%s) %s is back to %.2f",
+                        metrics.getHostname(), metrics.getIp(), metricType, metricValue);
+        sendCustomTelegramAlert(metricType, message);
     }
 
     /**
-     * Sends a custom Telegram alert with the specified message.
+     * Queues a custom Telegram alert with the specified message.
+     * Delivery happens asynchronously on the Telegram delivery workers.
      *
      * @param metricType The type of metric for which the alert is being sent.
      * @param message    The alert message.
      */
     public void sendCustomTelegramAlert(String metricType, String message) {
-        String url = String.format("https://api.telegram.org/bot%s/sendMessage", telegramBotToken);
-        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
-        params.add("chat_id", telegramChatId);
-        params.add("text", message);
-        try {
-            restTemplate.postForObject(url, params, String.class);
-        } catch (Exception e) {
-            System.out.println("Error sending telegram alert: " + e.getMessage());
-        }
+        telegramDeliveryService.enqueue(message);
     }
     
+    /**
+     * Queues the Telegram alert of an external application (see /api/external/alert).
+     * The API key must already have been validated.
+     * A log that does not fit in one Telegram message is cut to its head and tail, and the full log is
+     * attached as a gzip-compressed document, spooled to disk without copying it in memory.
+     */
+    public void sendExternalAlert(CustomAlertRequest req) {
+        String header = String.format("[%s] \nApplication: %s\nDate: %s\nLog:\n", req.getAppName(),
+                req.getApplication(), req.getExecutionDate());
+        if (header.length() > TelegramDeliveryService.MAX_MESSAGE_LENGTH / 2) {
+            header = header.substring(0, TelegramDeliveryService.MAX_MESSAGE_LENGTH / 2) + "...\nLog:\n";
+        }
+        String logText = req.getLog() != null ? req.getLog() : "(no log provided)";
+        int room = TelegramDeliveryService.MAX_MESSAGE_LENGTH - header.length();
+        if (logText.length() <= room) {
+            sendCustomTelegramAlert("EXTERNAL", header + logText);
+            return;
+        }
+        // Too long for one Telegram message: send head and tail, and the full log as a compressed document.
+        String filename = req.getAppName().replaceAll("[^A-Za-z0-9._-]", "_") + "-log.txt";
+        TelegramDocumentService.Result attached = telegramDocumentService.sendText(logText, filename,
+                String.format("[%s] Full log of %s (%s)", req.getAppName(), req.getApplication(), req.getExecutionDate()),
+                true);
+        String marker = attached == TelegramDocumentService.Result.QUEUED
+                ? "\n[... %d characters omitted, full log attached as " + filename + ".gz ...]\n"
+                : "\n[... %d characters omitted ...]\n";
+        sendCustomTelegramAlert("EXTERNAL", header + LogExcerpt.of(logText, room, marker));
+    }
+
     /**
      * Sends a file (log) as a document via Telegram.
+     * The upload is spooled to a temporary file (gzip-compressed on the fly if requested) and streamed
+     * to Telegram from there, so the file is never loaded in the heap.
      */
-    public void sendTelegramDocument(MultipartFile file) {
-        try {
-            String url = String.format("https://api.telegram.org/bot%s/sendDocument", telegramBotToken);
-            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-            body.add("chat_id", telegramChatId);
-            byte[] bytes = file.getBytes();
-            ByteArrayResource resource = new ByteArrayResource(bytes) {
-                @Override public String getFilename() {
-                    return file.getOriginalFilename();
-                }
-            };
-            body.add("document", resource);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-            HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
-            restTemplate.postForEntity(url, requestEntity, String.class);
-        } catch (Exception e) {
-            System.err.println("Error sending document: " + e.getMessage());
+    public TelegramDocumentService.Result sendTelegramDocument(MultipartFile file, String caption, boolean compress) {
+        // Only the last path segment of the client's file name.
+        String filename = file.getOriginalFilename() != null
+                ? file.getOriginalFilename().substring(Math.max(file.getOriginalFilename().lastIndexOf('/'),
+                        file.getOriginalFilename().lastIndexOf('\\')) + 1)
+                : "";
+        if (filename.isBlank()) {
+            filename = "document";
+        }
+        try (InputStream content = file.getInputStream()) {
+            return telegramDocumentService.send(content, filename, caption, compress);
+        } catch (IOException e) {
+            log.error("Error reading uploaded document {}: {}", filename, e.getMessage());
+            return TelegramDocumentService.Result.FAILED;
         }
     }
 }
\ No newline at end of file
@@ -1,36 +1,156 @@
 // src/main/java/org/cheetah/monitoring/service/ApiClientService.java
 package org.cheetah.monitoring.services;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.cheetah.monitoring.model.ApiClient;
+import org.cheetah.monitoring.model.dto.CreateApiKeyRequest;
 import org.cheetah.monitoring.repositories.ApiClientRepository;
+import org.cheetah.monitoring.utils.TokenBucket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
 /**
  * Service for managing external API clients and API key validation.
+ * Keys are cached in memory by appName for monitoring.api-keys.cache-ttl-ms, and unknown appNames for
+ * the shorter monitoring.api-keys.negative-ttl-ms, so validating a key usually needs no database query.
+ * Every client is rate limited by its own lock-free token bucket (limits stored on the ApiClient document),
+ * and its usage is counted in striped counters (LongAdder) flushed periodically to MongoDB.
  */
 @Service
+@Slf4j
 public class ApiClientService {
 
+    // Bounds of the optional limits of a new client.
+    static final double MIN_RATE_PER_MINUTE = 0.01;
+    static final double MAX_RATE_PER_MINUTE = 60000;
+    static final int MAX_BURST = 1000;
+
+    /**
+     * Cached key and limits of an appName; apiKey is null when the appName does not exist.
+     */
+    private record CachedKey(byte[] apiKey, double ratePerMinute, int burst, long expiresAt) {
+    }
+
+    /**
+     * Token bucket built for the given limits; bucket is null when the client is not limited.
+     */
+    private record Limit(double ratePerMinute, int burst, TokenBucket bucket) {
+    }
+
+    /**
+     * Rate limit and usage counters of a client, not flushed yet.
+     */
+    private static final class ClientUsage {
+        private final LongAdder accepted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private volatile long lastUsedAt;
+        private volatile Limit limit;
+    }
+
+    private record FlushedUsage(ClientUsage usage, long accepted, long rejected) {
+    }
+
     private final ApiClientRepository clientRepo;
+    private final MongoTemplate mongoTemplate;
+    private final Map<String, CachedKey> keyCache = new ConcurrentHashMap<>();
+    private final Map<String, ClientUsage> usages = new ConcurrentHashMap<>();
     private static final DateTimeFormatter HUMAN_FORMATTER =
         DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
                          .withZone(ZoneId.systemDefault());
 
-    public ApiClientService(ApiClientRepository clientRepo) {
+    @Value("${monitoring.api-keys.cache-ttl-ms:300000}")
+    private long cacheTtlMs;
+
+    @Value("${monitoring.api-keys.negative-ttl-ms:10000}")
+    private long negativeTtlMs;
+
+    @Value("${monitoring.api-keys.cache-max-entries:10000}")
+    private int cacheMaxEntries;
+
+    @Value("${monitoring.api-keys.default-rate-per-minute:60}")
+    private double defaultRatePerMinute;
+
+    @Value("${monitoring.api-keys.default-burst:10}")
+    private int defaultBurst;
+
+    public ApiClientService(ApiClientRepository clientRepo, MongoTemplate mongoTemplate) {
         this.clientRepo = clientRepo;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Creates the unique indexes on appName and apiKey, so lookups are indexed and
+     * two concurrent createClient calls cannot register the same appName.
+     */
+    @PostConstruct
+    public void ensureIndexes() {
+        try {
+            mongoTemplate.indexOps(ApiClient.class).ensureIndex(new Index()
+                    .on("appName", Sort.Direction.ASC)
+                    .unique()
+                    .named("apiclient_appname_idx"));
+            mongoTemplate.indexOps(ApiClient.class).ensureIndex(new Index()
+                    .on("apiKey", Sort.Direction.ASC)
+                    .unique()
+                    .named("apiclient_apikey_idx"));
+        } catch (Exception e) {
+            log.error("Error creating the API client indexes: {}", e.getMessage());
+        }
     }
 
     /**
-     * Creates a new API client for the given application name.
+     * Checks a request for a new client: the appName is required, the rate limits are optional
+     * (null for the server defaults) but bounded.
+     *
+     * @return the error to report to the client, or null if the request is valid.
+     */
+    public String validate(CreateApiKeyRequest req) {
+        if (req.getAppName() == null || req.getAppName().isBlank()) {
+            return "appName is required";
+        }
+        Double ratePerMinute = req.getRatePerMinute();
+        Integer burst = req.getBurst();
+        if (ratePerMinute != null && !(ratePerMinute >= MIN_RATE_PER_MINUTE && ratePerMinute <= MAX_RATE_PER_MINUTE)) {
+            return "ratePerMinute must be between " + MIN_RATE_PER_MINUTE + " and " + MAX_RATE_PER_MINUTE;
+        }
+        if (burst != null && (burst < 1 || burst > MAX_BURST)) {
+            return "burst must be between 1 and " + MAX_BURST;
+        }
+        return null;
+    }
+
+    /**
+     * Creates a new API client for the given application name, with optional rate limits
+     * (null for the server defaults).
      * Generates a unique API key and stores it in MongoDB.
      * Returns the created client, or null if the appName already exists.
      */
-    public ApiClient createClient(String appName) {
+    public ApiClient createClient(String appName, Double ratePerMinute, Integer burst) {
         if (clientRepo.findByAppName(appName) != null) {
             return null; // appName already exists
         }
@@ -42,15 +162,126 @@ public class ApiClientService {
                 .apiKey(UUID.randomUUID().toString())
                 .createdAt(now)
                 .createdAtHuman(human)
+                .ratePerMinute(ratePerMinute)
+                .burst(burst)
                 .build();
-        return clientRepo.save(client);
+        try {
+            return clientRepo.save(client);
+        } catch (DuplicateKeyException e) {
+            return null; // created concurrently
+        } finally {
+            // Drop a cached "unknown appName" answer.
+            keyCache.remove(appName);
+        }
     }
 
     /**
      * Validates that the given API key is associated with the given appName.
+     * The keys are compared in constant time.
      */
     public boolean validateKey(String appName, String apiKey) {
-        ApiClient client = clientRepo.findByAppName(appName);
-        return client != null && client.getApiKey().equals(apiKey);
+        if (appName == null || apiKey == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        CachedKey cached = keyCache.get(appName);
+        if (cached == null || cached.expiresAt() <= now) {
+            ApiClient client = clientRepo.findByAppName(appName);
+            cached = client != null
+                    ? new CachedKey(client.getApiKey().getBytes(StandardCharsets.UTF_8),
+                            client.getRatePerMinute() != null ? client.getRatePerMinute() : defaultRatePerMinute,
+                            client.getBurst() != null ? client.getBurst() : defaultBurst,
+                            now + cacheTtlMs)
+                    : new CachedKey(null, 0, 0, now + negativeTtlMs);
+            // Unknown appNames are not cached once the cache is full, so random names cannot fill it.
+            if (client != null || keyCache.size() < cacheMaxEntries) {
+                keyCache.put(appName, cached);
+            }
+        }
+        return cached.apiKey() != null
+                && MessageDigest.isEqual(cached.apiKey(), apiKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Takes a permit from the rate limit of a validated client and counts the call.
+     * A rate of 0 or less means unlimited.
+     *
+     * @return 0 if the call is allowed, otherwise the number of nanoseconds until it would be.
+     */
+    public long tryConsume(String appName) {
+        CachedKey cached = keyCache.get(appName);
+        double ratePerMinute = cached != null && cached.apiKey() != null ? cached.ratePerMinute() : defaultRatePerMinute;
+        int burst = cached != null && cached.apiKey() != null ? cached.burst() : defaultBurst;
+        ClientUsage usage = usages.computeIfAbsent(appName, name -> new ClientUsage());
+        Limit limit = usage.limit;
+        if (limit == null || limit.ratePerMinute() != ratePerMinute || limit.burst() != burst) {
+            // First call or limits changed: a racing thread may build its own bucket, which is harmless.
+            limit = new Limit(ratePerMinute, burst,
+                    ratePerMinute > 0 ? new TokenBucket(ratePerMinute / 60.0, Math.max(1, burst)) : null);
+            usage.limit = limit;
+        }
+        long waitNanos = limit.bucket() != null ? limit.bucket().reserveOrWait() : 0;
+        if (waitNanos == 0) {
+            usage.accepted.increment();
+        } else {
+            usage.rejected.increment();
+        }
+        usage.lastUsedAt = System.currentTimeMillis();
+        return waitNanos;
+    }
+
+    /**
+     * Formats a wait returned by tryConsume as a Retry-After value (whole seconds, at least 1).
+     */
+    public static String retryAfterSeconds(long waitNanos) {
+        return String.valueOf(Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L));
+    }
+
+    /**
+     * Adds the usage counted since the last flush to the ApiClient documents,
+     * with a single unordered bulk of $inc updates.
+     */
+    @Scheduled(fixedDelayString = "${monitoring.api-keys.usage-flush-interval-ms:60000}")
+    @PreDestroy
+    public void flushUsage() {
+        BulkOperations bulk = null;
+        List<FlushedUsage> flushed = new ArrayList<>();
+        for (Map.Entry<String, ClientUsage> entry : usages.entrySet()) {
+            ClientUsage usage = entry.getValue();
+            long accepted = usage.accepted.sumThenReset();
+            long rejected = usage.rejected.sumThenReset();
+            if (accepted == 0 && rejected == 0) {
+                continue;
+            }
+            if (bulk == null) {
+                bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, ApiClient.class);
+            }
+            bulk.updateOne(Query.query(Criteria.where("appName").is(entry.getKey())),
+                    new Update().inc("acceptedCount", accepted)
+                            .inc("rejectedCount", rejected)
+                            .max("lastUsedAt", usage.lastUsedAt));
+            flushed.add(new FlushedUsage(usage, accepted, rejected));
+        }
+        if (bulk == null) {
+            return;
+        }
+        try {
+            bulk.execute();
+        } catch (Exception e) {
+            log.warn("Error writing the usage of {} API clients, retrying at the next flush: {}", flushed.size(), e.getMessage());
+            for (FlushedUsage counts : flushed) {
+                counts.usage().accepted.add(counts.accepted());
+                counts.usage().rejected.add(counts.rejected());
+            }
+        }
+    }
+
+    /**
+     * Drops the expired cache entries.
+     */
+    @Scheduled(fixedDelayString = "${monitoring.api-keys.cache-ttl-ms:300000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        keyCache.values().removeIf(cached -> cached.expiresAt() <= now);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,162 @@
+package org.cheetah.monitoring.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.cheetah.monitoring.model.ClusterNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Membership of the monitoring nodes, kept in the clusterNodes collection with heartbeats,
+ * and a consistent hash ring over the live nodes used to split work (e.g. agents to probe) between them.
+ * Each node is placed on the ring many times (virtual nodes), so when a node joins or dies
+ * only its share of the keys moves, evenly spread over the other nodes.
+ */
+@Service
+@Slf4j
+public class ClusterMembershipService {
+
+    private final MongoTemplate mongoTemplate;
+    private final NodeIdentity nodeIdentity;
+    private final long nodeTimeoutMs;
+    private final int virtualNodes;
+    private final long startedAt = System.currentTimeMillis();
+
+    // Immutable snapshot of the ring, replaced when the membership changes.
+    private volatile NavigableMap<Long, String> ring = new TreeMap<>();
+    private volatile List<String> members = List.of();
+
+    public ClusterMembershipService(MongoTemplate mongoTemplate,
+                                    NodeIdentity nodeIdentity,
+                                    @Value("${monitoring.cluster.node-timeout-ms:30000}") long nodeTimeoutMs,
+                                    @Value("${monitoring.cluster.virtual-nodes:128}") int virtualNodes) {
+        this.mongoTemplate = mongoTemplate;
+        this.nodeIdentity = nodeIdentity;
+        this.nodeTimeoutMs = nodeTimeoutMs;
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * Creates the TTL index that removes the documents of dead nodes, then joins the ring.
+     */
+    @PostConstruct
+    public void join() {
+        try {
+            // Same name as the index created by earlier versions from the mapping annotations.
+            mongoTemplate.indexOps(ClusterNode.class).ensureIndex(new Index()
+                    .on("expireAt", Sort.Direction.ASC)
+                    .expire(0)
+                    .named("expireAt"));
+        } catch (Exception e) {
+            log.error("Error creating the cluster node index: {}", e.getMessage());
+        }
+        heartbeat();
+    }
+
+    /**
+     * Refreshes the document of this node and rebuilds the ring if nodes joined or died.
+     */
+    @Scheduled(fixedDelayString = "${monitoring.cluster.heartbeat-interval-ms:10000}",
+               initialDelayString = "${monitoring.cluster.heartbeat-interval-ms:10000}")
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        try {
+            mongoTemplate.upsert(Query.query(Criteria.where("_id").is(nodeIdentity.getNodeId())),
+                    new Update()
+                            .set("startedAt", startedAt)
+                            .set("lastHeartbeat", now)
+                            .set("expireAt", new Date(now + nodeTimeoutMs)),
+                    ClusterNode.class);
+            Query live = Query.query(Criteria.where("lastHeartbeat").gt(now - nodeTimeoutMs));
+            live.fields().include("_id");
+            List<String> current = mongoTemplate.find(live, ClusterNode.class).stream()
+                    .map(ClusterNode::getId)
+                    .sorted()
+                    .toList();
+            if (!current.equals(members)) {
+                rebuild(current);
+            }
+        } catch (Exception e) {
+            // Keep the last known ring: the other nodes keep their shards as long as we keep ours.
+            log.error("Error sending cluster heartbeat: {}", e.getMessage());
+        }
+    }
+
+    private void rebuild(List<String> current) {
+        NavigableMap<Long, String> newRing = new TreeMap<>();
+        for (String node : current) {
+            for (int i = 0; i < virtualNodes; i++) {
+                newRing.put(hash(node + "#" + i), node);
+            }
+        }
+        ring = newRing;
+        members = current;
+        log.info("Cluster membership changed: {} node(s) {}", current.size(), current);
+    }
+
+    /**
+     * Returns true if the given key belongs to this node's shard.
+     * While the ring is empty (Mongo not reachable yet) this node owns every key.
+     */
+    public boolean owns(String key) {
+        NavigableMap<Long, String> snapshot = ring;
+        if (snapshot.isEmpty()) {
+            return true;
+        }
+        Map.Entry<Long, String> owner = snapshot.ceilingEntry(hash(key));
+        if (owner == null) {
+            owner = snapshot.firstEntry();
+        }
+        return owner.getValue().equals(nodeIdentity.getNodeId());
+    }
+
+    /**
+     * Returns the ids of the live nodes, as of the last heartbeat.
+     */
+    public List<String> getMembers() {
+        return members;
+    }
+
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Leaves the cluster so the other nodes take over this node's shard right away.
+     */
+    @PreDestroy
+    public void leave() {
+        try {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(nodeIdentity.getNodeId())), ClusterNode.class);
+        } catch (Exception e) {
+            log.error("Error leaving the cluster: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package org.cheetah.monitoring.services;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Stream;
+
+import org.cheetah.monitoring.model.AgentInfo;
+import org.cheetah.monitoring.model.Alert;
+import org.cheetah.monitoring.repositories.AgentInfoRepository;
+import org.cheetah.monitoring.repositories.AlertRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tracks the last heartbeat of every registered agent (any /api/metrics sample or /api/agent/register call)
+ * and raises an "agent silent" alert when an agent stops reporting for monitoring.heartbeat.timeout-ms,
+ * without any network probe.
+ * <p>
+ * Only hosts present in the agents collection are tracked: samples of unknown hostnames do not take a slot,
+ * so unauthenticated clients cannot fill the tracker or trigger alerts for hosts that never registered.
+ * Every tracked hostname is interned once into a slot; the last-seen times live in primitive long arrays
+ * (pages of fixed size that never move), so a heartbeat is a map lookup and an array store.
+ * Missed heartbeats are found with a deadline wheel: every slot sits in the bucket of its deadline,
+ * and each tick only looks at the slots due in that tick, rescheduling those that reported meanwhile.
+ * Slots of hosts owned by another node are parked at the far end of the wheel, so they cost one check
+ * per timeout instead of one per tick.
+ * <p>
+ * Heartbeats received by this node are flushed to the lastHeartbeat of the agents collection, and the
+ * stored lastHeartbeat is merged back periodically, so every node sees the heartbeats received by the others.
+ * lastHeartbeat is only written by this tracker (and registration), unlike lastSeen, which the port probes
+ * also refresh. Alerts are only raised by the node whose shard of the cluster ring owns the hostname.
+ */
+@Component
+@Slf4j
+public class HeartbeatTracker {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int MAX_PAGES = 4096;
+
+    private static final int ALIVE = 0;
+    // Silent, without a delivered alert (suppressed, or already silent at startup): no recovery message.
+    private static final int SILENT = 1;
+    // Silent, and the alert was delivered: a recovery message is sent when it reports again.
+    private static final int ALERTED = 2;
+    private static final int NO_SLOT = -1;
+
+    /**
+     * Fixed-size block of slots. Hostnames are written before the slot is published.
+     */
+    private static final class Page {
+        private final String[] hostnames = new String[PAGE_SIZE];
+        private final AtomicReferenceArray<String> ips = new AtomicReferenceArray<>(PAGE_SIZE);
+        private final AtomicLongArray lastSeen = new AtomicLongArray(PAGE_SIZE);
+        private final AtomicIntegerArray states = new AtomicIntegerArray(PAGE_SIZE);
+        // 1 while the slot is in the dirty queue, waiting to be flushed.
+        private final AtomicIntegerArray dirty = new AtomicIntegerArray(PAGE_SIZE);
+    }
+
+    /**
+     * Bucket of the deadline wheel: a growable list of slots. Only used by the tick thread.
+     */
+    private static final class Bucket {
+        private int[] slots = new int[16];
+        private int size;
+
+        private void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+    }
+
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private final Page[] pages = new Page[MAX_PAGES];
+    private int slotCount;
+
+    // Slots to (re)schedule on the wheel at the next tick: new hosts and hosts reporting again.
+    private final Queue<Integer> pending = new ConcurrentLinkedQueue<>();
+    // Slots whose heartbeat must be written to the agents collection.
+    private final Queue<Integer> dirtySlots = new ConcurrentLinkedQueue<>();
+
+    private final MongoTemplate mongoTemplate;
+    private final AgentInfoRepository agentInfoRepository;
+    private final AlertRepository alertRepository;
+    private final AlertService alertService;
+    private final AlertDeduplicator alertDeduplicator;
+    private final ClusterMembershipService clusterMembershipService;
+
+    @Value("${monitoring.heartbeat.timeout-ms:180000}")
+    private long timeoutMs;
+
+    @Value("${monitoring.heartbeat.tick-ms:5000}")
+    private long tickMs;
+
+    private Bucket[] wheel;
+    private long currentTick;
+    private volatile boolean fullLogged;
+
+    public HeartbeatTracker(MongoTemplate mongoTemplate, AgentInfoRepository agentInfoRepository,
+                            AlertRepository alertRepository, AlertService alertService,
+                            AlertDeduplicator alertDeduplicator, ClusterMembershipService clusterMembershipService) {
+        this.mongoTemplate = mongoTemplate;
+        this.agentInfoRepository = agentInfoRepository;
+        this.alertRepository = alertRepository;
+        this.alertService = alertService;
+        this.alertDeduplicator = alertDeduplicator;
+        this.clusterMembershipService = clusterMembershipService;
+    }
+
+    /**
+     * Builds the wheel (one bucket per tick of the timeout, plus one) and loads the known agents.
+     * Agents already silent at startup are tracked as silent without alerting.
+     */
+    @PostConstruct
+    public void init() {
+        wheel = new Bucket[(int) (timeoutMs / tickMs) + 2];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        currentTick = System.currentTimeMillis() / tickMs;
+        try {
+            syncFromAgents();
+        } catch (Exception e) {
+            log.error("Error loading agent heartbeats: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Records a heartbeat of the given host, received now. Hosts not registered in the agents collection
+     * (as of the last sync) are ignored.
+     */
+    public void beat(String hostname, String ip) {
+        if (hostname == null) {
+            return;
+        }
+        Integer slot = slots.get(hostname);
+        if (slot != null) {
+            beat(slot, ip);
+        }
+    }
+
+    /**
+     * Returns true if the host is registered in the agents collection (as of the last sync) and tracked here.
+     */
+    public boolean isTracked(String hostname) {
+        return hostname != null && slots.containsKey(hostname);
+    }
+
+    /**
+     * Starts tracking a host that has just registered, if needed, and records its heartbeat.
+     */
+    public void registered(String hostname, String ip) {
+        if (hostname == null) {
+            return;
+        }
+        Integer slot = slots.get(hostname);
+        if (slot == null) {
+            slot = allocate(hostname, ALIVE, System.currentTimeMillis());
+            if (slot == NO_SLOT) {
+                return;
+            }
+        }
+        beat(slot, ip);
+    }
+
+    private void beat(int slot, String ip) {
+        Page page = pages[slot >>> PAGE_BITS];
+        int index = slot & (PAGE_SIZE - 1);
+        if (ip != null && !ip.equals(page.ips.get(index))) {
+            page.ips.set(index, ip);
+        }
+        seen(slot, System.currentTimeMillis());
+        if (page.dirty.get(index) == 0 && page.dirty.compareAndSet(index, 0, 1)) {
+            dirtySlots.add(slot);
+        }
+    }
+
+    /**
+     * Moves the last-seen time of a slot forward and, if it was silent and the heartbeat is fresh,
+     * marks it alive again and sends the recovery message.
+     */
+    private void seen(int slot, long timestamp) {
+        Page page = pages[slot >>> PAGE_BITS];
+        int index = slot & (PAGE_SIZE - 1);
+        long last = page.lastSeen.get(index);
+        while (timestamp > last && !page.lastSeen.compareAndSet(index, last, timestamp)) {
+            last = page.lastSeen.get(index);
+        }
+        int state = page.states.get(index);
+        if (state != ALIVE && timestamp > System.currentTimeMillis() - timeoutMs
+                && page.states.compareAndSet(index, state, ALIVE)) {
+            pending.add(slot);
+            if (state == ALERTED) {
+                String hostname = page.hostnames[index];
+                String ip = page.ips.get(index);
+                alertDeduplicator.release(ip, "SILENT", null);
+                alertService.sendCustomTelegramAlert("SILENT",
+                        String.format("Resolved: agent %s (%s) is reporting again.", hostname, ip));
+            }
+        }
+    }
+
+    /**
+     * Interns a hostname into a new slot, or returns NO_SLOT (never throws) when all the slots are taken.
+     * Only in-memory work happens under the monitor.
+     */
+    private synchronized int allocate(String hostname, int state, long lastSeen) {
+        Integer existing = slots.get(hostname);
+        if (existing != null) {
+            return existing;
+        }
+        int slot = slotCount;
+        int pageIndex = slot >>> PAGE_BITS;
+        if (pageIndex >= MAX_PAGES) {
+            if (!fullLogged) {
+                fullLogged = true;
+                log.warn("Heartbeat tracker is full ({} hosts), new hosts are not tracked; first dropped: {}",
+                        MAX_PAGES * PAGE_SIZE, hostname);
+            }
+            return NO_SLOT;
+        }
+        if (pages[pageIndex] == null) {
+            pages[pageIndex] = new Page();
+        }
+        Page page = pages[pageIndex];
+        page.hostnames[slot & (PAGE_SIZE - 1)] = hostname;
+        page.lastSeen.set(slot & (PAGE_SIZE - 1), lastSeen);
+        page.states.set(slot & (PAGE_SIZE - 1), state);
+        slotCount++;
+        // Publishing through the concurrent map makes the page visible to the other threads.
+        slots.put(hostname, slot);
+        if (state == ALIVE) {
+            pending.add(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Advances the wheel to the current time: the slots of every elapsed tick are checked and either
+     * rescheduled at their new deadline or reported as silent.
+     */
+    @Scheduled(fixedDelayString = "${monitoring.heartbeat.tick-ms:5000}")
+    public void tick() {
+        tick(System.currentTimeMillis());
+    }
+
+    void tick(long now) {
+        Integer slot;
+        while ((slot = pending.poll()) != null) {
+            schedule(slot);
+        }
+        long nowTick = now / tickMs;
+        while (currentTick < nowTick) {
+            currentTick++;
+            Bucket bucket = wheel[(int) (currentTick % wheel.length)];
+            int size = bucket.size;
+            // Rescheduled slots always land in a later bucket, never in this one, so it can be emptied first.
+            bucket.size = 0;
+            for (int i = 0; i < size; i++) {
+                check(bucket.slots[i], now);
+            }
+        }
+    }
+
+    private void schedule(int slot) {
+        Page page = pages[slot >>> PAGE_BITS];
+        long deadline = page.lastSeen.get(slot & (PAGE_SIZE - 1)) + timeoutMs;
+        long tick = Math.max(currentTick + 1, (deadline + tickMs - 1) / tickMs);
+        // Deadlines beyond the wheel are checked at its far end and rescheduled from there.
+        tick = Math.min(tick, currentTick + wheel.length - 1);
+        wheel[(int) (tick % wheel.length)].add(slot);
+    }
+
+    /**
+     * Puts a slot at the far end of the wheel, to be checked again one timeout from now.
+     */
+    private void park(int slot) {
+        wheel[(int) ((currentTick + wheel.length - 1) % wheel.length)].add(slot);
+    }
+
+    private void check(int slot, long now) {
+        Page page = pages[slot >>> PAGE_BITS];
+        int index = slot & (PAGE_SIZE - 1);
+        if (page.states.get(index) != ALIVE) {
+            return;
+        }
+        if (page.lastSeen.get(index) + timeoutMs > now) {
+            schedule(slot);
+            return;
+        }
+        String hostname = page.hostnames[index];
+        if (!clusterMembershipService.owns(hostname)) {
+            // Another node alerts for this host; keep tracking it in case the shards move.
+            park(slot);
+            return;
+        }
+        // The host may have reported to another node since the last sync.
+        long stored = storedLastHeartbeat(hostname);
+        if (stored < 0) {
+            // Do not raise an alert on a database error; check again later.
+            park(slot);
+            return;
+        }
+        if (stored + timeoutMs > now) {
+            seen(slot, stored);
+            schedule(slot);
+            return;
+        }
+        if (page.states.compareAndSet(index, ALIVE, SILENT)
+                && sendSilentAlert(hostname, page.ips.get(index), page.lastSeen.get(index))) {
+            // Unless it already reported again meanwhile.
+            page.states.compareAndSet(index, SILENT, ALERTED);
+        }
+    }
+
+    /**
+     * Returns the lastHeartbeat stored for the hostname, 0 if none, or -1 on a database error.
+     */
+    private long storedLastHeartbeat(String hostname) {
+        try {
+            Query query = Query.query(Criteria.where("hostname").is(hostname))
+                    .with(Sort.by(Sort.Direction.DESC, "lastHeartbeat"))
+                    .limit(1);
+            query.fields().include("lastHeartbeat");
+            AgentInfo agent = mongoTemplate.findOne(query, AgentInfo.class);
+            return agent != null ? agent.getLastHeartbeat() : 0L;
+        } catch (Exception e) {
+            log.warn("Error reading the last heartbeat of {}: {}", hostname, e.getMessage());
+            return -1L;
+        }
+    }
+
+    /**
+     * Sends the "agent silent" alert, unless one was sent within the suppression window.
+     * Returns true if it was sent.
+     */
+    private boolean sendSilentAlert(String hostname, String ip, long lastSeen) {
+        if (!alertDeduplicator.tryAcquire(ip, "SILENT", null)) {
+            return false;
+        }
+        long silentForSeconds = (System.currentTimeMillis() - lastSeen) / 1000;
+        alertService.sendCustomTelegramAlert("SILENT",
+                String.format("Alert! Agent %s (%s) has not reported for %d seconds.", hostname, ip, silentForSeconds));
+        alertRepository.save(Alert.builder()
+                .hostname(hostname)
+                .ip(ip)
+                .date(new Date())
+                .metricType("SILENT")
+                .timestamp(Instant.now().toEpochMilli())
+                .build());
+        return true;
+    }
+
+    /**
+     * Writes the heartbeats received since the last flush to the lastHeartbeat of the agents collection
+     * (a single unordered bulk of $max updates), so the other nodes see them.
+     */
+    @Scheduled(fixedDelayString = "${monitoring.heartbeat.flush-interval-ms:10000}")
+    @PreDestroy
+    public void flush() {
+        BulkOperations bulk = null;
+        int count = 0;
+        Integer slot;
+        while ((slot = dirtySlots.poll()) != null) {
+            Page page = pages[slot >>> PAGE_BITS];
+            int index = slot & (PAGE_SIZE - 1);
+            page.dirty.set(index, 0);
+            if (bulk == null) {
+                bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, AgentInfo.class);
+            }
+            bulk.updateMulti(Query.query(Criteria.where("hostname").is(page.hostnames[index])),
+                    new Update().max("lastHeartbeat", page.lastSeen.get(index)));
+            count++;
+        }
+        if (bulk == null) {
+            return;
+        }
+        try {
+            bulk.execute();
+        } catch (Exception e) {
+            log.warn("Error writing {} agent heartbeats: {}", count, e.getMessage());
+        }
+    }
+
+    /**
+     * Merges the lastHeartbeat of the agents collection, so hosts registered or reporting to other nodes
+     * are tracked here too.
+     */
+    @Scheduled(fixedDelayString = "${monitoring.heartbeat.sync-interval-ms:60000}",
+               initialDelayString = "${monitoring.heartbeat.sync-interval-ms:60000}")
+    public void sync() {
+        try {
+            syncFromAgents();
+        } catch (Exception e) {
+            log.warn("Error syncing agent heartbeats: {}", e.getMessage());
+        }
+    }
+
+    private void syncFromAgents() {
+        long silentBefore = System.currentTimeMillis() - timeoutMs;
+        try (Stream<AgentInfo> agents = agentInfoRepository.streamAllForHeartbeats()) {
+            agents.forEach(agent -> {
+                if (agent.getHostname() == null) {
+                    return;
+                }
+                long lastSeen = agent.getLastHeartbeat();
+                Integer slot = slots.get(agent.getHostname());
+                if (slot == null) {
+                    slot = allocate(agent.getHostname(), lastSeen > silentBefore ? ALIVE : SILENT, lastSeen);
+                    if (slot == NO_SLOT) {
+                        return;
+                    }
+                    pages[slot >>> PAGE_BITS].ips.compareAndSet(slot & (PAGE_SIZE - 1), null, agent.getIp());
+                }
+                seen(slot, lastSeen);
+            });
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.cheetah.monitoring.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.cheetah.monitoring.model.Metrics;
+import org.cheetah.monitoring.repositories.MetricsRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Last known state of every monitored host, kept in memory.
+ * Each host has a single mutable slot with primitive fields that is overwritten in place on every sample,
+ * so updates do not allocate and reads are O(1) per host without touching MongoDB.
+ * Named values are kept in a double[] indexed by their MetricNameDictionary id (NaN when absent).
+ * Only hosts registered in the agents collection (as tracked by HeartbeatTracker) are kept, so arbitrary
+ * hostnames posted to /api/metrics cannot grow the store, and hosts that have not reported for
+ * monitoring.latest.idle-timeout-ms are evicted. The store only holds the samples received by this node:
+ * callers fall back to MongoDB for hosts it does not know.
+ */
+@Component
+@Slf4j
+public class LatestMetricsStore {
+
+    /**
+     * Mutable per-host slot. Guarded by its own monitor.
+     */
+    private static final class HostState {
+        private final String hostname;
+        private String ip;
+        private boolean hasMetrics;
+        private long timestamp;
+        private double cpuUsage;
+        private double diskUsage;
+        private double ramUsage;
+        private double[] values;
+        // Time this node last received a sample of the host, used for eviction.
+        private long updatedAt;
+        // Set when the slot is removed from the map; an update holding it retries with a new slot.
+        private boolean evicted;
+
+        private HostState(String hostname) {
+            this.hostname = hostname;
+        }
+    }
+
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+    private final MetricsRepository metricsRepository;
+    private final MetricNameDictionary metricNameDictionary;
+    private final HeartbeatTracker heartbeatTracker;
+
+    @Value("${monitoring.latest.warmup-window-ms:900000}")
+    private long warmupWindowMs;
+
+    @Value("${monitoring.latest.idle-timeout-ms:3600000}")
+    private long idleTimeoutMs;
+
+    public LatestMetricsStore(MetricsRepository metricsRepository, MetricNameDictionary metricNameDictionary,
+                              HeartbeatTracker heartbeatTracker) {
+        this.metricsRepository = metricsRepository;
+        this.metricNameDictionary = metricNameDictionary;
+        this.heartbeatTracker = heartbeatTracker;
+    }
+
+    /**
+     * Loads the latest sample of every registered host that reported within the warm-up window,
+     * so the store is useful right after a restart.
+     */
+    @PostConstruct
+    public void warmUp() {
+        try {
+            metricsRepository.findLatestPerHost(System.currentTimeMillis() - warmupWindowMs).forEach(this::update);
+        } catch (Exception e) {
+            log.error("Error warming up the latest metrics store: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Records a sample as the latest state of its host, unless a newer sample is already known.
+     * Samples of hosts not registered in the agents collection are ignored.
+     */
+    public void update(Metrics metrics) {
+        if (!heartbeatTracker.isTracked(metrics.getHostname())) {
+            return;
+        }
+        while (!update(hosts.computeIfAbsent(metrics.getHostname(), HostState::new), metrics)) {
+            // The slot was evicted meanwhile: retry with a new one.
+        }
+    }
+
+    /**
+     * Writes the sample to the slot. Returns false if the slot has been evicted.
+     */
+    private boolean update(HostState state, Metrics metrics) {
+        Map<String, Double> values = metrics.getValues();
+        synchronized (state) {
+            if (state.evicted) {
+                return false;
+            }
+            state.updatedAt = System.currentTimeMillis();
+            if (state.hasMetrics && metrics.getTimestamp() < state.timestamp) {
+                return true;
+            }
+            // The host's array is reused and only grows when a higher id shows up.
+            if (state.values != null) {
+                Arrays.fill(state.values, Double.NaN);
+            }
+            if (values != null) {
+                for (Map.Entry<String, Double> entry : values.entrySet()) {
+                    // The names were added by MetricsService: a map lookup, never a MongoDB query.
+                    int id = metricNameDictionary.knownIdOf(entry.getKey());
+                    if (id == MetricNameDictionary.NO_ID || entry.getValue() == null) {
+                        continue;
+                    }
+                    if (state.values == null || id >= state.values.length) {
+                        int length = state.values == null ? 0 : state.values.length;
+                        state.values = state.values == null ? new double[id + 1]
+                                : Arrays.copyOf(state.values, Math.max(id + 1, length * 2));
+                        Arrays.fill(state.values, length, state.values.length, Double.NaN);
+                    }
+                    state.values[id] = entry.getValue();
+                }
+            }
+            state.ip = metrics.getIp();
+            state.hasMetrics = true;
+            state.timestamp = metrics.getTimestamp();
+            state.cpuUsage = metrics.getCpuUsage();
+            state.diskUsage = metrics.getDiskUsage();
+            state.ramUsage = metrics.getRamUsage();
+            return true;
+        }
+    }
+
+    /**
+     * Evicts the hosts this node has not received a sample of for monitoring.latest.idle-timeout-ms.
+     */
+    @Scheduled(fixedDelayString = "${monitoring.latest.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long idleBefore = System.currentTimeMillis() - idleTimeoutMs;
+        hosts.values().removeIf(state -> {
+            synchronized (state) {
+                state.evicted = state.updatedAt < idleBefore;
+                return state.evicted;
+            }
+        });
+    }
+
+    /**
+     * Returns the latest sample of the given host, or null if no metrics are known.
+     */
+    public Metrics get(String hostname) {
+        HostState state = hosts.get(hostname);
+        return state != null ? snapshot(state) : null;
+    }
+
+    /**
+     * Returns the latest sample of every host that has metrics, sorted by hostname.
+     */
+    public List<Metrics> getAll() {
+        List<Metrics> result = new ArrayList<>(hosts.size());
+        for (HostState state : hosts.values()) {
+            Metrics metrics = snapshot(state);
+            if (metrics != null) {
+                result.add(metrics);
+            }
+        }
+        result.sort(Comparator.comparing(Metrics::getHostname));
+        return result;
+    }
+
+    private Metrics snapshot(HostState state) {
+        Metrics metrics;
+        double[] copy;
+        synchronized (state) {
+            if (!state.hasMetrics) {
+                return null;
+            }
+            copy = state.values != null ? state.values.clone() : null;
+            metrics = Metrics.builder()
+                    .hostname(state.hostname)
+                    .ip(state.ip)
+                    .timestamp(state.timestamp)
+                    .cpuUsage(state.cpuUsage)
+                    .diskUsage(state.diskUsage)
+                    .ramUsage(state.ramUsage)
+                    .build();
+        }
+        // Names are resolved outside the lock: an unknown id may reload the dictionary from MongoDB.
+        if (copy != null) {
+            Map<String, Double> values = new LinkedHashMap<>();
+            for (int id = 0; id < copy.length; id++) {
+                if (!Double.isNaN(copy[id])) {
+                    String name = metricNameDictionary.nameOf(id);
+                    if (name != null) {
+                        values.put(name, copy[id]);
+                    }
+                }
+            }
+            metrics.setValues(values.isEmpty() ? null : values);
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,178 @@
+package org.cheetah.monitoring.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.cheetah.monitoring.model.JobLock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Lease locks on scheduled jobs, shared by all the monitoring nodes through the jobLocks collection.
+ * A lease is acquired atomically with findAndModify, is renewed by a heartbeat while it is held and
+ * expires by itself if its holder dies. Every acquisition gets a new, higher fencing token, so writes
+ * made by a holder that lost its lease can be told apart from the ones of the current holder.
+ */
+@Service
+@Slf4j
+public class LeaseLockService {
+
+    /**
+     * A lease held by this node.
+     */
+    public static final class Lease {
+        private final String jobName;
+        private final long fencingToken;
+        private volatile long expiresAt;
+        private volatile boolean lost;
+
+        private Lease(String jobName, long fencingToken, long expiresAt) {
+            this.jobName = jobName;
+            this.fencingToken = fencingToken;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        public long getFencingToken() {
+            return fencingToken;
+        }
+
+        /**
+         * Returns true while the lease is still held: it was not lost on renewal and it did not expire
+         * locally (e.g. because Mongo could not be reached to renew it).
+         */
+        public boolean isValid() {
+            return !lost && System.currentTimeMillis() < expiresAt;
+        }
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final NodeIdentity nodeIdentity;
+    private final long ttlMs;
+    private final Map<String, Lease> held = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "lease-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LeaseLockService(MongoTemplate mongoTemplate,
+                            NodeIdentity nodeIdentity,
+                            @Value("${monitoring.lock.ttl-ms:60000}") long ttlMs,
+                            @Value("${monitoring.lock.heartbeat-interval-ms:20000}") long heartbeatIntervalMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.nodeIdentity = nodeIdentity;
+        this.ttlMs = ttlMs;
+        heartbeat.scheduleWithFixedDelay(this::renewAll, heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tries to acquire the lease of a job. Succeeds if nobody holds it, if the previous lease expired,
+     * or if this node already holds it.
+     *
+     * @param jobName The job name, used as the lock id.
+     * @return the lease, or null if another node holds it.
+     */
+    public Lease tryAcquire(String jobName) {
+        long now = System.currentTimeMillis();
+        Query query = Query.query(Criteria.where("_id").is(jobName)
+                .orOperator(Criteria.where("expiresAt").lt(now), Criteria.where("lockId").is(nodeIdentity.getNodeId())));
+        Update update = new Update()
+                .set("jobName", jobName)
+                .set("lockId", nodeIdentity.getNodeId())
+                .set("timestamp", now)
+                .set("expiresAt", now + ttlMs)
+                .inc("fencingToken", 1);
+        try {
+            JobLock lock = mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), JobLock.class);
+            if (lock == null) {
+                return null;
+            }
+            Lease lease = new Lease(jobName, lock.getFencingToken(), lock.getExpiresAt());
+            held.put(jobName, lease);
+            return lease;
+        } catch (DuplicateKeyException e) {
+            // The lock exists and is held by another node: the upsert tried to insert a second document.
+            return null;
+        } catch (Exception e) {
+            log.error("Error acquiring lease for {}: {}", jobName, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Extends a lease held by this node. Marks it as lost if another node took it in the meantime.
+     *
+     * @return true if the lease is still held.
+     */
+    public boolean renew(Lease lease) {
+        if (lease.lost) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            long matched = mongoTemplate.updateFirst(ownedBy(lease),
+                    new Update().set("timestamp", now).set("expiresAt", now + ttlMs), JobLock.class).getMatchedCount();
+            if (matched == 0) {
+                lease.lost = true;
+                held.remove(lease.jobName, lease);
+                log.warn("Lease for {} (token {}) was lost", lease.jobName, lease.fencingToken);
+                return false;
+            }
+            lease.expiresAt = now + ttlMs;
+            return true;
+        } catch (Exception e) {
+            // Keep the lease until it expires locally: a transient error does not mean someone else took it.
+            log.error("Error renewing lease for {}: {}", lease.jobName, e.getMessage());
+            return lease.isValid();
+        }
+    }
+
+    /**
+     * Releases a lease, letting other nodes acquire it right away.
+     */
+    public void release(Lease lease) {
+        held.remove(lease.jobName, lease);
+        if (lease.lost) {
+            return;
+        }
+        lease.lost = true;
+        try {
+            mongoTemplate.updateFirst(ownedBy(lease), new Update().set("expiresAt", 0L), JobLock.class);
+        } catch (Exception e) {
+            log.error("Error releasing lease for {}: {}", lease.jobName, e.getMessage());
+        }
+    }
+
+    private Query ownedBy(Lease lease) {
+        return Query.query(Criteria.where("_id").is(lease.jobName)
+                .and("lockId").is(nodeIdentity.getNodeId())
+                .and("fencingToken").is(lease.fencingToken));
+    }
+
+    private void renewAll() {
+        held.values().forEach(this::renew);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        held.values().forEach(this::release);
+    }
+}
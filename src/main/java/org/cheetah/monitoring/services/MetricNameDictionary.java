@@ -0,0 +1,297 @@
+package org.cheetah.monitoring.services;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+import org.bson.Document;
+import org.cheetah.monitoring.model.Metrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Dictionary of the names of the additional metrics (Metrics.values), shared by all nodes through
+ * the metricNames collection. Every name gets a small integer id once; samples are stored with the ids
+ * instead of the names, so long tagged names are not repeated in every document and names containing
+ * dots or other characters not allowed in MongoDB keys can be used.
+ * <p>
+ * The dictionary holds at most monitoring.metrics.max-names names across the cluster (ids come from a shared
+ * sequence), so clients sending ever new tag values cannot grow it, or the per-host arrays indexed by id, without bound.
+ * MongoDB is never called while holding a lock: concurrent allocations of the same name are resolved by the
+ * unique _id of metricNames, and the in-memory tables are only updated under a short ReentrantLock.
+ */
+@Service
+@Slf4j
+public class MetricNameDictionary {
+
+    /** Returned by {@link #idOf(String)} when the name cannot be added. */
+    public static final int NO_ID = -1;
+
+    private static final String COLLECTION = "metricNames";
+    private static final String COUNTERS = "counters";
+
+    // A name, then optional tags: e.g. "load1", "disk_used_pct{mount=/var}".
+    private static final Pattern NAME = Pattern.compile("[A-Za-z_:][A-Za-z0-9_:.]*(\\{[^{}]*\\})?");
+    private static final int MAX_NAME_LENGTH = 200;
+    // Unknown ids reload the dictionary at most once per interval.
+    private static final long RELOAD_INTERVAL_MS = 10_000;
+
+    private final MongoTemplate mongoTemplate;
+    private final int maxValuesPerSample;
+    private final int maxNames;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // Names by id, replaced (copy on write, under lock) when a name is added.
+    private volatile String[] names = new String[0];
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong lastReload = new AtomicLong();
+    // Set once the shared sequence reached maxNames: unknown names are then rejected without querying MongoDB.
+    private volatile boolean full;
+
+    public MetricNameDictionary(MongoTemplate mongoTemplate,
+                                @Value("${monitoring.metrics.max-values-per-sample:256}") int maxValuesPerSample,
+                                @Value("${monitoring.metrics.max-names:10000}") int maxNames) {
+        this.mongoTemplate = mongoTemplate;
+        this.maxValuesPerSample = maxValuesPerSample;
+        this.maxNames = maxNames;
+    }
+
+    /**
+     * Creates the index used to look up a single name by id, then loads the dictionary.
+     */
+    @PostConstruct
+    public void load() {
+        try {
+            mongoTemplate.indexOps(COLLECTION).ensureIndex(new Index()
+                    .on("code", Sort.Direction.ASC)
+                    .unique()
+                    .named("metric_name_code_idx"));
+        } catch (Exception e) {
+            log.error("Error creating the metric name index: {}", e.getMessage());
+        }
+        try {
+            reload();
+        } catch (Exception e) {
+            log.error("Error loading the metric name dictionary: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the base name of a metric, without its tags.
+     */
+    public static String baseName(String name) {
+        int tags = name.indexOf('{');
+        return tags < 0 ? name : name.substring(0, tags);
+    }
+
+    /**
+     * Returns the id of the given name, adding it to the dictionary if needed,
+     * or {@link #NO_ID} if the dictionary is full.
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (full) {
+            return NO_ID;
+        }
+        return allocate(name);
+    }
+
+    /**
+     * Returns the id of a name already in the dictionary, or {@link #NO_ID}. Never queries MongoDB.
+     */
+    public int knownIdOf(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : NO_ID;
+    }
+
+    /**
+     * Returns the name with the given id, or null if unknown.
+     * Unknown ids reload the dictionary from MongoDB at most once every few seconds;
+     * in between, the single id is looked up.
+     */
+    public String nameOf(int id) {
+        if (id < 0 || id >= maxNames) {
+            return null;
+        }
+        String[] current = names;
+        if (id < current.length && current[id] != null) {
+            return current[id];
+        }
+        // Added by another node since the last load: reload, but not more than once per interval.
+        long last = lastReload.get();
+        long now = System.currentTimeMillis();
+        try {
+            if (now - last < RELOAD_INTERVAL_MS || !lastReload.compareAndSet(last, now)) {
+                return lookUp(id);
+            }
+            reload();
+        } catch (Exception e) {
+            log.error("Error reading the name of metric id {}: {}", id, e.getMessage());
+        }
+        current = names;
+        return id < current.length ? current[id] : null;
+    }
+
+    /**
+     * Reads the name of a single id from MongoDB and adds it to the dictionary, or returns null if unknown.
+     */
+    private String lookUp(int id) {
+        Document entry = mongoTemplate.findOne(Query.query(Criteria.where("code").is(id)), Document.class, COLLECTION);
+        if (entry == null) {
+            return null;
+        }
+        String name = entry.getString("_id");
+        register(name, id);
+        return name;
+    }
+
+    /**
+     * Validates the named values of a sample and fills its storage form (encodedValues).
+     * Values with an invalid name or a non-finite value, values beyond the per-sample limit,
+     * and new names once the dictionary is full, are dropped.
+     */
+    public Metrics encode(Metrics metrics) {
+        if (metrics.getValues() == null || metrics.getValues().isEmpty()) {
+            metrics.setValues(null);
+            metrics.setEncodedValues(null);
+            return metrics;
+        }
+        Map<String, Double> valid = new LinkedHashMap<>();
+        Map<String, Double> encoded = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> entry : metrics.getValues().entrySet()) {
+            if (valid.size() == maxValuesPerSample) {
+                break;
+            }
+            String name = entry.getKey();
+            Double value = entry.getValue();
+            if (value == null || !Double.isFinite(value) || name == null
+                    || name.length() > MAX_NAME_LENGTH || !NAME.matcher(name).matches()) {
+                continue;
+            }
+            try {
+                int id = idOf(name);
+                if (id == NO_ID) {
+                    continue;
+                }
+                encoded.put(String.valueOf(id), value);
+                valid.put(name, value);
+            } catch (Exception e) {
+                log.error("Error adding metric name {}: {}", name, e.getMessage());
+            }
+        }
+        metrics.setValues(valid.isEmpty() ? null : valid);
+        metrics.setEncodedValues(encoded.isEmpty() ? null : encoded);
+        return metrics;
+    }
+
+    /**
+     * Fills the named values of a sample read from MongoDB from its storage form.
+     */
+    public Metrics decode(Metrics metrics) {
+        Map<String, Double> encoded = metrics.getEncodedValues();
+        if (encoded == null || encoded.isEmpty()) {
+            return metrics;
+        }
+        Map<String, Double> values = new LinkedHashMap<>();
+        encoded.forEach((id, value) -> {
+            String name = nameOf(Integer.parseInt(id));
+            if (name != null) {
+                values.put(name, value);
+            }
+        });
+        metrics.setValues(values);
+        return metrics;
+    }
+
+    /**
+     * Adds a name to the shared dictionary. Runs without any lock: if two threads or nodes add the same name
+     * at once, the unique _id of metricNames lets only one insert win and the others read its id
+     * (the sequence values they took are simply never used).
+     */
+    private int allocate(String name) {
+        Document existing = mongoTemplate.findById(name, Document.class, COLLECTION);
+        if (existing == null) {
+            Document counter = mongoTemplate.findAndModify(Query.query(Criteria.where("_id").is(COLLECTION)),
+                    new Update().inc("seq", 1),
+                    FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    Document.class, COUNTERS);
+            int code = counter.get("seq", Number.class).intValue() - 1;
+            if (code >= maxNames) {
+                full = true;
+                log.warn("Metric name dictionary is full ({} names), new names are dropped; first rejected: {}", maxNames, name);
+                // Learn the names added by the other nodes, which are still accepted.
+                reload();
+                return ids.getOrDefault(name, NO_ID);
+            }
+            try {
+                mongoTemplate.insert(new Document("_id", name).append("code", code), COLLECTION);
+                register(name, code);
+                return code;
+            } catch (DuplicateKeyException e) {
+                // Another thread or node added the same name first: use its id.
+                existing = mongoTemplate.findById(name, Document.class, COLLECTION);
+            }
+        }
+        int code = existing.get("code", Number.class).intValue();
+        register(name, code);
+        return code;
+    }
+
+    private void reload() {
+        // Read outside the lock, apply under it.
+        List<Document> entries = mongoTemplate.findAll(Document.class, COLLECTION);
+        lastReload.set(System.currentTimeMillis());
+        lock.lock();
+        try {
+            String[] copy = names.clone();
+            for (Document entry : entries) {
+                String name = entry.getString("_id");
+                int id = entry.get("code", Number.class).intValue();
+                if (id >= copy.length) {
+                    copy = Arrays.copyOf(copy, Math.max(id + 1, copy.length * 2));
+                }
+                copy[id] = name;
+                ids.put(name, id);
+            }
+            names = copy;
+            if (ids.size() >= maxNames) {
+                full = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void register(String name, int id) {
+        lock.lock();
+        try {
+            String[] current = names;
+            if (id >= current.length || !name.equals(current[id])) {
+                String[] copy = Arrays.copyOf(current, Math.max(current.length, id + 1));
+                copy[id] = name;
+                names = copy;
+            }
+            ids.put(name, id);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
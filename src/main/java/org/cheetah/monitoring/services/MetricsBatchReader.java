@@ -0,0 +1,120 @@
+package org.cheetah.monitoring.services;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+import org.cheetah.monitoring.model.Metrics;
+import org.cheetah.monitoring.model.dto.BatchIngestResponse;
+import org.cheetah.monitoring.utils.BoundedInputStream;
+import org.cheetah.monitoring.utils.BoundedInputStream.LimitExceededException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * Reads a batch of metrics samples (a JSON or CBOR array, optionally gzip-compressed) with a streaming
+ * parser, one sample at a time, and queues each of them through MetricsService.
+ * Both the body and what it decompresses to are limited in size, so a gzip bomb cannot exhaust the server.
+ * Shared by the servlet and the reactive endpoints.
+ */
+@Service
+public class MetricsBatchReader {
+
+    /**
+     * Outcome of a batch.
+     */
+    public enum Status {
+        /** Every sample was queued. */
+        OK,
+        /** The ingest queue filled up: the last samples were rejected and must be sent again. */
+        QUEUE_FULL,
+        /** The body is not a well-formed array of samples (or the gzip stream is corrupt or truncated). */
+        INVALID,
+        /** The body, or what it decompresses to, exceeds its size limit. */
+        TOO_LARGE
+    }
+
+    /**
+     * Result of a batch: the counts of accepted and rejected samples, and the reason when it is invalid.
+     */
+    public record Result(Status status, BatchIngestResponse response, String error) {
+    }
+
+    private final MetricsService metricsService;
+    private final ObjectMapper objectMapper;
+    // Same configuration as objectMapper, reading CBOR instead of JSON.
+    private final ObjectMapper cborMapper;
+
+    @Value("${monitoring.ingest.batch.max-body-bytes:10485760}")
+    private long maxBodyBytes;
+
+    @Value("${monitoring.ingest.batch.max-decompressed-bytes:104857600}")
+    private long maxDecompressedBytes;
+
+    public MetricsBatchReader(MetricsService metricsService, ObjectMapper objectMapper) {
+        this.metricsService = metricsService;
+        this.objectMapper = objectMapper;
+        this.cborMapper = objectMapper.copyWith(new CBORFactory());
+    }
+
+    /**
+     * Reads and queues the samples of a batch. Samples are queued in order; once the ingest queue is full
+     * the remaining ones are only counted as rejected.
+     *
+     * @param body The request body, not closed.
+     * @param gzip Whether the body is gzip-compressed.
+     * @param cbor Whether the body is CBOR instead of JSON.
+     * @throws IOException if the body cannot be read (e.g. the client went away).
+     */
+    public Result read(InputStream body, boolean gzip, boolean cbor) throws IOException {
+        ObjectMapper mapper = cbor ? cborMapper : objectMapper;
+        BatchIngestResponse response = new BatchIngestResponse(0, 0);
+        try {
+            InputStream in = new BoundedInputStream(body, maxBodyBytes);
+            if (gzip) {
+                in = new BoundedInputStream(new GZIPInputStream(in), maxDecompressedBytes);
+            }
+            try (JsonParser parser = mapper.createParser(in)) {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    return invalid(response, "body must be an array of metrics");
+                }
+                JsonToken token;
+                while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                    if (response.getRejected() > 0) {
+                        parser.skipChildren();
+                        response.setRejected(response.getRejected() + 1);
+                    } else if (metricsService.saveMetrics(mapper.readValue(parser, Metrics.class))) {
+                        response.setAccepted(response.getAccepted() + 1);
+                    } else {
+                        response.setRejected(response.getRejected() + 1);
+                    }
+                }
+                if (token != JsonToken.END_ARRAY) {
+                    return invalid(response, token == null
+                            ? "metrics batch is truncated"
+                            : "expected a metrics object, found " + token);
+                }
+            }
+        } catch (LimitExceededException e) {
+            return new Result(Status.TOO_LARGE, response, "metrics batch " + e.getMessage());
+        } catch (JsonProcessingException e) {
+            return invalid(response, e.getOriginalMessage());
+        } catch (ZipException | EOFException e) {
+            // Corrupt or truncated gzip stream.
+            return invalid(response, "invalid gzip body: " + e.getMessage());
+        }
+        return new Result(response.getRejected() > 0 ? Status.QUEUE_FULL : Status.OK, response, null);
+    }
+
+    private static Result invalid(BatchIngestResponse response, String error) {
+        return new Result(Status.INVALID, response, "invalid metrics batch after " + response.getAccepted() + " samples: " + error);
+    }
+}
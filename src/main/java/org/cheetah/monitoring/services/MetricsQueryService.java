@@ -0,0 +1,65 @@
+package org.cheetah.monitoring.services;
+
+import java.util.stream.Stream;
+
+import org.cheetah.monitoring.model.Metrics;
+import org.cheetah.monitoring.repositories.MetricsRepository;
+import org.cheetah.monitoring.services.RollupService.Resolution;
+import org.cheetah.monitoring.utils.MetricsAggregator;
+import org.springframework.stereotype.Service;
+
+/**
+ * Read path for historical metrics of a host.
+ * Raw samples are returned when no step is requested; otherwise points are aggregated server-side,
+ * from the rollup collections when one of them fits the step and range, or from the raw samples.
+ */
+@Service
+public class MetricsQueryService {
+
+    private final MetricsRepository metricsRepository;
+    private final RollupService rollupService;
+
+    public MetricsQueryService(MetricsRepository metricsRepository, RollupService rollupService) {
+        this.metricsRepository = metricsRepository;
+        this.rollupService = rollupService;
+    }
+
+    /**
+     * Checks the parameters of a query.
+     *
+     * @return the error to report to the client, or null if the parameters are valid.
+     */
+    public String validate(long from, long to, Long step, String agg) {
+        if (from >= to) {
+            return "from must be before to";
+        }
+        if (step != null && step <= 0) {
+            return "step must be positive";
+        }
+        if (!MetricsAggregator.FUNCTIONS.contains(agg)) {
+            return "agg must be one of " + MetricsAggregator.FUNCTIONS;
+        }
+        return null;
+    }
+
+    /**
+     * Streams the metrics of a host in the range from <= timestamp < to.
+     * The caller must close the stream.
+     *
+     * @param hostname The host.
+     * @param from     Start of the range (millis, inclusive).
+     * @param to       End of the range (millis, exclusive).
+     * @param step     Distance between aggregated points in millis, or null for raw samples.
+     * @param agg      Aggregation function: "avg", "min", "max" or "p95".
+     */
+    public Stream<Metrics> query(String hostname, long from, long to, Long step, String agg) {
+        if (step == null) {
+            return metricsRepository.streamRange(hostname, from, to);
+        }
+        Resolution resolution = rollupService.pickResolution(from, step);
+        if (resolution != null) {
+            return MetricsAggregator.aggregateRollups(rollupService.find(hostname, null, resolution, from, to), step, agg);
+        }
+        return metricsRepository.aggregateRange(hostname, from, to, step, agg);
+    }
+}
@@ -1,29 +1,226 @@
 package org.cheetah.monitoring.services;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
 import org.cheetah.monitoring.model.Metrics;
 import org.cheetah.monitoring.repositories.MetricsRepository;
+import org.cheetah.monitoring.repositories.MetricsRepositoryCustom.BatchResult;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import com.mongodb.MongoException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
 /**
  * Service for handling business logic related to metrics.
+ * Incoming samples are buffered in memory and written to MongoDB in bulk batches,
+ * either when a batch is full or when the flush interval elapses.
  */
 @Service
+@Slf4j
 public class MetricsService {
 
+    // Label the server puts on write errors that are safe to retry.
+    private static final String RETRYABLE_WRITE_ERROR = "RetryableWriteError";
+
     @Autowired
     private MetricsRepository metricsRepository;
-    
+
     @Autowired
     private AlertService alertService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private LatestMetricsStore latestMetricsStore;
+
+    @Autowired
+    private RollupService rollupService;
+
+    @Autowired
+    private MetricNameDictionary metricNameDictionary;
+
+    @Autowired
+    private HeartbeatTracker heartbeatTracker;
+
+    @Value("${monitoring.ingest.queue-capacity:100000}")
+    private int queueCapacity;
+
+    @Value("${monitoring.ingest.batch-size:1000}")
+    private int batchSize;
+
+    private final Queue<Metrics> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private ExecutorService flushExecutor;
+
+    // The flush runs on a virtual thread when the virtual-thread mode is enabled.
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private Timer flushTimer;
+    private Counter rejectedCounter;
+    private Counter writtenCounter;
+    private Counter droppedCounter;
+
+    @PostConstruct
+    public void init() {
+        flushExecutor = Executors.newSingleThreadExecutor(virtualThreads
+                ? Thread.ofVirtual().name("metrics-flush").factory()
+                : Thread.ofPlatform().name("metrics-flush").daemon().factory());
+        Gauge.builder("cheetah.ingest.queue.depth", queueSize, AtomicInteger::get)
+                .description("Metrics samples waiting to be written to MongoDB")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("cheetah.ingest.flush")
+                .description("Latency of bulk writes of buffered metrics")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("cheetah.ingest.rejected")
+                .description("Metrics samples rejected because the ingest queue was full")
+                .register(meterRegistry);
+        writtenCounter = Counter.builder("cheetah.ingest.written")
+                .description("Metrics samples written to MongoDB")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("cheetah.ingest.dropped")
+                .description("Metrics samples dropped because their write failed with a non-retryable error")
+                .register(meterRegistry);
+    }
 
     /**
-     * Saves the received metrics into MongoDB.
+     * Queues the received metrics for a batched write into MongoDB.
      * @param metrics Metrics object received from the agent.
+     * @return true if the sample was accepted, false if the ingest queue is full.
      */
-    public void saveMetrics(Metrics metrics) {
-        metricsRepository.save(metrics);
+    public boolean saveMetrics(Metrics metrics) {
+        if (queueSize.incrementAndGet() > queueCapacity) {
+            queueSize.decrementAndGet();
+            rejectedCounter.increment();
+            return false;
+        }
+        metricNameDictionary.encode(metrics);
+        queue.offer(metrics);
+        latestMetricsStore.update(metrics);
+        heartbeatTracker.beat(metrics.getHostname(), metrics.getIp());
+        rollupService.record(metrics);
+        if (queueSize.get() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            flushExecutor.execute(this::flush);
+        }
         // Check if any metric has reached the critical threshold
-        alertService.checkAndSendAlerts(metrics);    }
-}
\ No newline at end of file
+        alertService.checkAndSendAlerts(metrics);
+        return true;
+    }
+
+    /**
+     * Periodically writes whatever is buffered, so samples never wait longer than the flush interval.
+     */
+    @Scheduled(fixedDelayString = "${monitoring.ingest.flush-interval-ms:1000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * Drains the queue in batches of at most batchSize samples and writes each batch
+     * with a single unordered bulk write. Only one flush runs at a time.
+     */
+    public void flush() {
+        flushRequested.set(false);
+        if (!flushLock.tryLock()) {
+            return;
+        }
+        try {
+            List<Metrics> batch = new ArrayList<>(batchSize);
+            while (drain(batch) > 0 && writeBatch(batch)) {
+                batch.clear();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int drain(List<Metrics> batch) {
+        Metrics metrics;
+        while (batch.size() < batchSize && (metrics = queue.poll()) != null) {
+            batch.add(metrics);
+        }
+        queueSize.addAndGet(-batch.size());
+        return batch.size();
+    }
+
+    private boolean writeBatch(List<Metrics> batch) {
+        long start = System.nanoTime();
+        try {
+            BatchResult result = metricsRepository.insertBatch(batch);
+            List<Metrics> retryable = result.retryable();
+            writtenCounter.increment(batch.size() - retryable.size() - result.dropped());
+            droppedCounter.increment(result.dropped());
+            if (retryable.isEmpty()) {
+                return true;
+            }
+            // Everything but the failed writes is already stored, retry only the transient failures.
+            log.error("Error writing {} of {} metrics samples, they will be retried", retryable.size(), batch.size());
+            requeue(retryable);
+            return false;
+        } catch (Exception e) {
+            if (!isRetryable(e)) {
+                // Requeued, these samples would fail again on every flush and never leave the queue.
+                log.error("Error writing {} metrics samples, they are dropped: {}", batch.size(), e.getMessage());
+                droppedCounter.increment(batch.size());
+                return true;
+            }
+            // Put the samples back so they are retried on the next flush; while MongoDB is down
+            // the queue fills up and new samples are rejected instead of exhausting the heap.
+            log.error("Error writing {} metrics samples, they will be retried: {}", batch.size(), e.getMessage());
+            requeue(batch);
+            return false;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Returns true for the errors a later attempt may not hit: network errors, timeouts, an unavailable
+     * primary, or writes the server labels as retryable.
+     */
+    private static boolean isRetryable(Exception e) {
+        return e instanceof DataAccessResourceFailureException
+                || e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e.getCause() instanceof MongoException mongo && mongo.hasErrorLabel(RETRYABLE_WRITE_ERROR);
+    }
+
+    private void requeue(List<Metrics> samples) {
+        queue.addAll(samples);
+        queueSize.addAndGet(samples.size());
+    }
+
+    /**
+     * Writes the remaining buffered samples before the application stops.
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        flush();
+    }
+}
@@ -0,0 +1,30 @@
+package org.cheetah.monitoring.services;
+
+import java.net.InetAddress;
+import java.util.UUID;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Unique identity of this monitoring node, used to hold leases and to take part in the cluster.
+ * Made of the local hostname plus a random suffix, so restarts and several nodes on the same host never collide.
+ */
+@Component
+public class NodeIdentity {
+
+    private final String nodeId;
+
+    public NodeIdentity() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        this.nodeId = host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
@@ -0,0 +1,77 @@
+package org.cheetah.monitoring.services;
+
+import java.util.List;
+
+import org.cheetah.monitoring.model.AgentInfo;
+import org.cheetah.monitoring.model.dto.BulkRegistrationResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of AgentRegistrationService, used by the reactive profile.
+ * Performs the same upserts on (ip, hostname) through the reactive Mongo driver.
+ */
+@Service
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+@Slf4j
+public class ReactiveAgentRegistrationService {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final HeartbeatTracker heartbeatTracker;
+
+    public ReactiveAgentRegistrationService(ReactiveMongoTemplate reactiveMongoTemplate, HeartbeatTracker heartbeatTracker) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.heartbeatTracker = heartbeatTracker;
+    }
+
+    /**
+     * Registers or updates an agent with a single atomic upsert (see AgentRegistrationService.registerAgent).
+     */
+    public Mono<AgentInfo> registerAgent(AgentInfo agentInfo) {
+        heartbeatTracker.registered(agentInfo.getHostname(), agentInfo.getIp());
+        long now = System.currentTimeMillis();
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        Mono<AgentInfo> upsert = reactiveMongoTemplate.findAndModify(AgentRegistrationService.byIpAndHostname(agentInfo),
+                AgentRegistrationService.registration(agentInfo, now), options, AgentInfo.class);
+        // Two upserts of the same new agent raced: the other one inserted it, so this one can only update.
+        return upsert.onErrorResume(DuplicateKeyException.class, e -> upsert);
+    }
+
+    /**
+     * Registers or updates many agents with a single unordered bulk of upserts
+     * (see AgentRegistrationService.registerAgents).
+     */
+    public Mono<BulkRegistrationResponse> registerAgents(List<AgentInfo> agents) {
+        long now = System.currentTimeMillis();
+        ReactiveBulkOperations bulk = reactiveMongoTemplate.bulkOps(BulkMode.UNORDERED, AgentInfo.class);
+        int valid = 0;
+        for (AgentInfo agentInfo : agents) {
+            if (agentInfo.getIp() == null || agentInfo.getHostname() == null) {
+                continue;
+            }
+            heartbeatTracker.registered(agentInfo.getHostname(), agentInfo.getIp());
+            bulk.upsert(AgentRegistrationService.byIpAndHostname(agentInfo), AgentRegistrationService.registration(agentInfo, now));
+            valid++;
+        }
+        if (valid == 0) {
+            return Mono.just(new BulkRegistrationResponse(agents.size(), 0, 0, agents.size()));
+        }
+        int attempted = valid;
+        return bulk.execute()
+                .onErrorResume(BulkOperationException.class, e -> {
+                    log.warn("{} of {} bulk agent registrations failed", e.getErrors().size(), attempted);
+                    return Mono.just(e.getResult());
+                })
+                .map(result -> AgentRegistrationService.toResponse(agents.size(), result));
+    }
+}
@@ -0,0 +1,383 @@
+package org.cheetah.monitoring.services;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.cheetah.monitoring.model.Metrics;
+import org.cheetah.monitoring.model.MetricRollup;
+import org.cheetah.monitoring.utils.LogHistogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Incrementally aggregates incoming samples into 1-minute, 1-hour and 1-day rollups per host and metric.
+ * Samples are accumulated in memory as they arrive; every flush interval the accumulated deltas are merged
+ * into MongoDB with $inc/$min/$max upserts, one collection per resolution, each with its own retention.
+ * Because only deltas are written, a restart or several nodes writing the same bucket do not lose data,
+ * and deltas that fail to be written are kept and merged again at the next flush.
+ * Hosts that have not sent a sample for longer than the largest resolution are dropped from memory
+ * once their deltas are flushed.
+ */
+@Service
+@Slf4j
+public class RollupService {
+
+    /**
+     * Available rollup resolutions, from the finest to the coarsest.
+     */
+    public enum Resolution {
+        MINUTE(60_000L, "metricsRollup1m"),
+        HOUR(3_600_000L, "metricsRollup1h"),
+        DAY(86_400_000L, "metricsRollup1d");
+
+        private final long sizeMs;
+        private final String collection;
+
+        Resolution(long sizeMs, String collection) {
+            this.sizeMs = sizeMs;
+            this.collection = collection;
+        }
+
+        public long getSizeMs() {
+            return sizeMs;
+        }
+
+        public String getCollection() {
+            return collection;
+        }
+
+        public long bucketStart(long timestamp) {
+            return timestamp - Math.floorMod(timestamp, sizeMs);
+        }
+    }
+
+    private static final Resolution[] RESOLUTIONS = Resolution.values();
+    // Hosts idle for longer than the largest bucket have no open bucket worth keeping.
+    private static final long IDLE_EVICTION_MS = RESOLUTIONS[RESOLUTIONS.length - 1].getSizeMs();
+
+    /**
+     * Samples of one metric of one host in one bucket, accumulated since the last flush.
+     */
+    private static final class Accumulator {
+        private final String metric;
+        private final Resolution resolution;
+        private final long bucketStart;
+        private int count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double[] values = new double[4];
+
+        private Accumulator(String metric, Resolution resolution, long bucketStart) {
+            this.metric = metric;
+            this.resolution = resolution;
+            this.bucketStart = bucketStart;
+        }
+
+        private void add(double value) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = value;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        private Accumulator drain() {
+            Accumulator delta = new Accumulator(metric, resolution, bucketStart);
+            delta.count = count;
+            delta.sum = sum;
+            delta.min = min;
+            delta.max = max;
+            delta.values = values;
+            count = 0;
+            sum = 0;
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+            values = new double[4];
+            return delta;
+        }
+    }
+
+    /**
+     * Open accumulators of one host, per metric and resolution, plus the ones of buckets already closed
+     * and waiting to be flushed. Guarded by its own monitor.
+     */
+    private static final class HostRollups {
+        private final Map<String, Accumulator[]> open = new HashMap<>();
+        private final List<Accumulator> closed = new ArrayList<>();
+        // Time this node last recorded a sample of the host, used for eviction.
+        private long lastRecordAt;
+        // Set when the host is removed from the map; a writer holding it retries with a new one.
+        private boolean evicted;
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final Map<String, HostRollups> hosts = new ConcurrentHashMap<>();
+    private final Map<Resolution, Long> retentionMs = new HashMap<>();
+    // Start of the first complete bucket of each resolution; absent while the collection is empty.
+    private final Map<Resolution, Long> coveredFrom = new ConcurrentHashMap<>();
+
+    public RollupService(MongoTemplate mongoTemplate,
+                         @Value("${monitoring.rollup.retention.minute-ms:604800000}") long minuteRetentionMs,
+                         @Value("${monitoring.rollup.retention.hour-ms:7776000000}") long hourRetentionMs,
+                         @Value("${monitoring.rollup.retention.day-ms:157680000000}") long dayRetentionMs) {
+        this.mongoTemplate = mongoTemplate;
+        retentionMs.put(Resolution.MINUTE, minuteRetentionMs);
+        retentionMs.put(Resolution.HOUR, hourRetentionMs);
+        retentionMs.put(Resolution.DAY, dayRetentionMs);
+    }
+
+    /**
+     * Creates the lookup and TTL indexes of the rollup collections and finds where each of them starts.
+     */
+    @PostConstruct
+    public void ensureIndexes() {
+        for (Resolution resolution : RESOLUTIONS) {
+            try {
+                mongoTemplate.indexOps(resolution.getCollection()).ensureIndex(new Index()
+                        .on("hostname", Sort.Direction.ASC)
+                        .on("metric", Sort.Direction.ASC)
+                        .on("bucketStart", Sort.Direction.ASC)
+                        .unique()
+                        .named("rollup_host_metric_start_idx"));
+                mongoTemplate.indexOps(resolution.getCollection()).ensureIndex(new Index()
+                        .on("expireAt", Sort.Direction.ASC)
+                        .expire(Duration.ZERO)
+                        .named("rollup_expiration_idx"));
+            } catch (Exception e) {
+                log.error("Error creating indexes on {}: {}", resolution.getCollection(), e.getMessage());
+            }
+            try {
+                Query first = new Query().with(Sort.by(Sort.Direction.ASC, "bucketStart")).limit(1);
+                MetricRollup rollup = mongoTemplate.findOne(first, MetricRollup.class, resolution.getCollection());
+                if (rollup != null) {
+                    coveredFrom.put(resolution, rollup.getBucketStart() + resolution.getSizeMs());
+                }
+            } catch (Exception e) {
+                log.error("Error reading the first bucket of {}: {}", resolution.getCollection(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Adds every metric of a sample (CPU, Disk, RAM and the named values) to the rollups of its host.
+     */
+    public void record(Metrics metrics) {
+        metrics.forEachValue((metric, value) -> record(metrics.getHostname(), metric, metrics.getTimestamp(), value));
+    }
+
+    /**
+     * Adds one value to the rollups of the given host and metric, at every resolution.
+     */
+    public void record(String hostname, String metric, long timestamp, double value) {
+        if (hostname == null || Double.isNaN(value)) {
+            return;
+        }
+        while (!record(hosts.computeIfAbsent(hostname, h -> new HostRollups()), metric, timestamp, value)) {
+            // The host was evicted meanwhile: retry with a new entry.
+        }
+    }
+
+    /**
+     * Adds the value to the host's accumulators. Returns false if the host has been evicted.
+     */
+    private boolean record(HostRollups host, String metric, long timestamp, double value) {
+        synchronized (host) {
+            if (host.evicted) {
+                return false;
+            }
+            host.lastRecordAt = System.currentTimeMillis();
+            Accumulator[] accumulators = host.open.computeIfAbsent(metric, m -> new Accumulator[RESOLUTIONS.length]);
+            for (int i = 0; i < RESOLUTIONS.length; i++) {
+                Resolution resolution = RESOLUTIONS[i];
+                long bucketStart = resolution.bucketStart(timestamp);
+                Accumulator current = accumulators[i];
+                if (current == null || current.bucketStart < bucketStart) {
+                    // A new bucket started: the previous one only needs its last delta flushed.
+                    if (current != null && current.count > 0) {
+                        host.closed.add(current);
+                    }
+                    current = new Accumulator(metric, resolution, bucketStart);
+                    accumulators[i] = current;
+                } else if (current.bucketStart > bucketStart) {
+                    // Late sample for a bucket that is no longer open.
+                    Accumulator late = new Accumulator(metric, resolution, bucketStart);
+                    late.add(value);
+                    host.closed.add(late);
+                    continue;
+                }
+                current.add(value);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Merges the accumulated deltas into the rollup collections, and drops the hosts left without
+     * deltas that have been idle for longer than the largest resolution.
+     */
+    @Scheduled(fixedDelayString = "${monitoring.rollup.flush-interval-ms:10000}")
+    public void flush() {
+        Map<Resolution, List<RollupDelta>> deltas = new HashMap<>();
+        long idleBefore = System.currentTimeMillis() - IDLE_EVICTION_MS;
+        hosts.forEach((hostname, host) -> {
+            synchronized (host) {
+                for (Accumulator closed : host.closed) {
+                    deltas.computeIfAbsent(closed.resolution, r -> new ArrayList<>()).add(new RollupDelta(hostname, closed));
+                }
+                host.closed.clear();
+                for (Accumulator[] accumulators : host.open.values()) {
+                    for (Accumulator accumulator : accumulators) {
+                        if (accumulator != null && accumulator.count > 0) {
+                            deltas.computeIfAbsent(accumulator.resolution, r -> new ArrayList<>())
+                                    .add(new RollupDelta(hostname, accumulator.drain()));
+                        }
+                    }
+                }
+                // Everything is drained: only deltas are written, so a sample arriving later simply
+                // starts new accumulators and is merged into the same buckets.
+                if (host.lastRecordAt < idleBefore) {
+                    host.evicted = true;
+                    hosts.remove(hostname, host);
+                }
+            }
+        });
+        deltas.forEach(this::write);
+    }
+
+    private record RollupDelta(String hostname, Accumulator accumulator) {
+    }
+
+    private void write(Resolution resolution, List<RollupDelta> deltas) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, MetricRollup.class, resolution.getCollection());
+        for (RollupDelta delta : deltas) {
+            Accumulator accumulator = delta.accumulator();
+            Query query = Query.query(Criteria.where("hostname").is(delta.hostname())
+                    .and("metric").is(accumulator.metric)
+                    .and("bucketStart").is(accumulator.bucketStart));
+            Update update = new Update()
+                    .setOnInsert("expireAt", new Date(accumulator.bucketStart + resolution.getSizeMs() + retentionMs.get(resolution)))
+                    .inc("count", accumulator.count)
+                    .inc("sum", accumulator.sum)
+                    .min("min", accumulator.min)
+                    .max("max", accumulator.max);
+            Map<Integer, Integer> bins = new HashMap<>();
+            for (int i = 0; i < accumulator.count; i++) {
+                bins.merge(LogHistogram.bin(accumulator.values[i]), 1, Integer::sum);
+            }
+            bins.forEach((bin, count) -> update.inc("histogram." + bin, count));
+            bulk.upsert(query, update);
+        }
+        try {
+            bulk.execute();
+            covered(resolution, deltas);
+        } catch (BulkOperationException e) {
+            log.warn("Error writing {} of {} {} rollups, retrying at the next flush", e.getErrors().size(), deltas.size(), resolution);
+            // The bulk is unordered: only the failed operations were not applied.
+            e.getErrors().forEach(error -> requeue(deltas.get(error.getIndex())));
+        } catch (Exception e) {
+            log.warn("Error writing {} {} rollups, retrying at the next flush: {}", deltas.size(), resolution, e.getMessage());
+            deltas.forEach(this::requeue);
+        }
+    }
+
+    /**
+     * Puts a delta that could not be written back with the closed accumulators of its host,
+     * so it is merged again at the next flush.
+     */
+    private void requeue(RollupDelta delta) {
+        while (!requeue(hosts.computeIfAbsent(delta.hostname(), h -> new HostRollups()), delta.accumulator())) {
+            // The host was evicted meanwhile: retry with a new entry.
+        }
+    }
+
+    private boolean requeue(HostRollups host, Accumulator accumulator) {
+        synchronized (host) {
+            if (host.evicted) {
+                return false;
+            }
+            host.closed.add(accumulator);
+            return true;
+        }
+    }
+
+    /**
+     * Records that the rollups of a resolution exist from the first bucket written after the first one
+     * (which only holds the samples received since startup).
+     */
+    private void covered(Resolution resolution, List<RollupDelta> deltas) {
+        if (coveredFrom.containsKey(resolution)) {
+            return;
+        }
+        long first = deltas.stream().mapToLong(delta -> delta.accumulator().bucketStart).min().orElse(Long.MAX_VALUE);
+        coveredFrom.putIfAbsent(resolution, first + resolution.getSizeMs());
+    }
+
+    /**
+     * Picks the coarsest resolution whose buckets are not larger than the requested step
+     * and whose rollups cover the start of the range: within the retention and not before the rollups existed.
+     *
+     * @param from   Start of the range (millis).
+     * @param stepMs Requested distance between points (millis).
+     * @return the resolution to query, or null if raw samples must be used.
+     */
+    public Resolution pickResolution(long from, long stepMs) {
+        long now = System.currentTimeMillis();
+        for (int i = RESOLUTIONS.length - 1; i >= 0; i--) {
+            Resolution resolution = RESOLUTIONS[i];
+            Long covered = coveredFrom.get(resolution);
+            if (resolution.getSizeMs() <= stepMs && covered != null && covered <= from
+                    && now - retentionMs.get(resolution) <= from) {
+                return resolution;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Streams the rollups of a host whose buckets start in the given range, ordered by bucket start.
+     * A bucket starting before from is left out, so no value older than from is returned.
+     * The caller must close the stream.
+     *
+     * @param metric The metric, or null for all metrics.
+     */
+    public Stream<MetricRollup> find(String hostname, String metric, Resolution resolution, long from, long to) {
+        Criteria criteria = Criteria.where("hostname").is(hostname).and("bucketStart").gte(from).lt(to);
+        if (metric != null) {
+            criteria = criteria.and("metric").is(metric);
+        }
+        Query query = Query.query(criteria).with(Sort.by(Sort.Direction.ASC, "bucketStart"));
+        return mongoTemplate.stream(query, MetricRollup.class, resolution.getCollection());
+    }
+
+    /**
+     * Writes the remaining deltas before the application stops.
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
@@ -8,34 +8,28 @@ import org.cheetah.monitoring.model.AgentInfo;
 import org.cheetah.monitoring.model.Metrics;
 import org.cheetah.monitoring.repositories.AgentInfoRepository;
 import org.cheetah.monitoring.repositories.MetricsRepository;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-
 /**
  * Handles incoming Telegram updates and responds to commands.
  */
 @Service
 public class TelegramBotService {
 
-    @Value("${telegram.bot.token}")
-    private String botToken;
-
-    private final RestTemplate rest = new RestTemplate();
     private final AgentInfoRepository agentRepo;
     private final MetricsRepository metricsRepo;
-
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final TelegramDeliveryService telegramDeliveryService;
+    private final LatestMetricsStore latestMetricsStore;
 
     public TelegramBotService(AgentInfoRepository agentRepo,
-                              MetricsRepository metricsRepo) {
+                              MetricsRepository metricsRepo,
+                              TelegramDeliveryService telegramDeliveryService,
+                              LatestMetricsStore latestMetricsStore) {
         this.agentRepo = agentRepo;
         this.metricsRepo = metricsRepo;
+        this.telegramDeliveryService = telegramDeliveryService;
+        this.latestMetricsStore = latestMetricsStore;
     }
 
     /**
@@ -99,7 +93,7 @@ public class TelegramBotService {
             }
             return agents.stream()
                 .map(agent -> {
-                    Metrics m = metricsRepo.findTopByHostnameOrderByTimestampDesc(agent.getHostname());
+                    Metrics m = latestMetrics(agent.getHostname());
                     if (m == null) {
                         return agent.getHostname() + ": no metrics available";
                     }
@@ -109,14 +103,27 @@ public class TelegramBotService {
                 })
                 .collect(Collectors.joining("\n"));
         }
-        Metrics m = metricsRepo.findTopByHostnameOrderByTimestampDesc(hostname);
+        Metrics m = latestMetrics(hostname);
         if (m == null) return "No metrics found for host: " + hostname;
-        return String.format(
-          "Status for %s:\nCPU: %.2f%%\nDisk: %.2f%%\nRAM: %.2f%%\nTimestamp: %d",
-          m.getHostname(), m.getCpuUsage(), m.getDiskUsage(), m.getRamUsage(), m.getTimestamp());
+        StringBuilder status = new StringBuilder(String.format(
+          "Status for %s:\nCPU: %.2f%%\nDisk: %.2f%%\nRAM: %.2f%%",
+          m.getHostname(), m.getCpuUsage(), m.getDiskUsage(), m.getRamUsage()));
+        if (m.getValues() != null) {
+            m.getValues().forEach((name, value) -> status.append(String.format("\n%s: %.2f", name, value)));
+        }
+        return status.append("\nTimestamp: ").append(m.getTimestamp()).toString();
     }
 
 
+    /**
+     * Returns the latest sample of the host from the in-memory store, or from MongoDB when this node
+     * has not received it recently (the host reports to another node, or went idle).
+     */
+    private Metrics latestMetrics(String hostname) {
+        Metrics m = latestMetricsStore.get(hostname);
+        return m != null ? m : metricsRepo.findTopByHostnameOrderByTimestampDesc(hostname);
+    }
+
     /**
      * Handles the /ports command, listing open ports for a given hostname.
      */
@@ -144,13 +151,9 @@ public class TelegramBotService {
     }
 
     /**
-     * Sends a text message back to the Telegram chat.
+     * Queues a text message back to the Telegram chat.
      */
     private void sendMessage(String chatId, String text) {
-        String url = "https://api.telegram.org/bot" + botToken + "/sendMessage";
-        MultiValueMap<String,String> params = new LinkedMultiValueMap<>();
-        params.add("chat_id", chatId);
-        params.add("text", text);
-        rest.postForObject(url, params, String.class);
+        telegramDeliveryService.enqueue(chatId, text);
     }
 }
\ No newline at end of file
@@ -0,0 +1,273 @@
+package org.cheetah.monitoring.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.cheetah.monitoring.utils.TokenBucket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Outbound queue for Telegram messages.
+ * Callers only enqueue; dedicated worker threads deliver the messages while respecting
+ * Telegram's rate limits (a global token bucket plus one per chat). When the queue backs up,
+ * pending messages for the same chat are coalesced into a single digest message.
+ * Messages rejected with 429 are retried after the delay requested by Telegram,
+ * other transient failures are retried with exponential backoff.
+ */
+@Service
+@Slf4j
+public class TelegramDeliveryService {
+
+    /** Maximum length of a Telegram text message. */
+    public static final int MAX_MESSAGE_LENGTH = 4096;
+
+    private static final String DIGEST_SEPARATOR = "\n\n";
+
+    /**
+     * A text message waiting to be delivered.
+     */
+    record OutboundMessage(String chatId, String text) {
+    }
+
+    @Value("${telegram.api.base-url:https://api.telegram.org}")
+    private String baseUrl;
+
+    @Value("${telegram.bot.token}")
+    private String botToken;
+
+    @Value("${telegram.chat.id}")
+    private String defaultChatId;
+
+    @Value("${telegram.delivery.workers:1}")
+    private int workers;
+
+    @Value("${telegram.delivery.coalesce-threshold:5}")
+    private int coalesceThreshold;
+
+    @Value("${telegram.delivery.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${telegram.delivery.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Value("${telegram.delivery.chat-rate-per-second:1}")
+    private double chatRatePerSecond;
+
+    @Value("${telegram.delivery.chat-burst:3}")
+    private int chatBurst;
+
+    // Workers run on virtual threads when the virtual-thread mode is enabled.
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final BlockingQueue<OutboundMessage> queue;
+    private final TokenBucket globalBucket;
+    private final Map<String, TokenBucket> chatBuckets = new ConcurrentHashMap<>();
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final MeterRegistry meterRegistry;
+
+    private Counter sentCounter;
+    private Counter droppedCounter;
+
+    public TelegramDeliveryService(MeterRegistry meterRegistry,
+                                   @Value("${telegram.delivery.queue-capacity:10000}") int queueCapacity,
+                                   @Value("${telegram.delivery.global-rate-per-second:30}") double globalRatePerSecond) {
+        this.meterRegistry = meterRegistry;
+        this.queue = new LinkedBlockingDeque<>(queueCapacity);
+        this.globalBucket = new TokenBucket(globalRatePerSecond, (int) Math.max(1, globalRatePerSecond));
+    }
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("cheetah.telegram.queue.depth", queue, BlockingQueue::size)
+                .description("Telegram messages waiting to be delivered")
+                .register(meterRegistry);
+        sentCounter = Counter.builder("cheetah.telegram.sent")
+                .description("Telegram messages delivered")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("cheetah.telegram.dropped")
+                .description("Telegram messages dropped because the queue was full or retries were exhausted")
+                .register(meterRegistry);
+        for (int i = 0; i < workers; i++) {
+            Thread.Builder builder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+            Thread worker = builder.name("telegram-delivery-" + i).start(this::runWorker);
+            workerThreads.add(worker);
+        }
+    }
+
+    /**
+     * Queues a message for the configured alert chat.
+     *
+     * @param text The message text.
+     */
+    public void enqueue(String text) {
+        enqueue(defaultChatId, text);
+    }
+
+    /**
+     * Queues a message for the given chat.
+     *
+     * @param chatId The destination chat.
+     * @param text   The message text.
+     */
+    public void enqueue(String chatId, String text) {
+        for (String part : split(text, MAX_MESSAGE_LENGTH)) {
+            if (!queue.offer(new OutboundMessage(chatId, part))) {
+                droppedCounter.increment();
+                log.warn("Telegram delivery queue is full, dropping message for chat {}", chatId);
+            }
+        }
+    }
+
+    /**
+     * Splits a text into parts of at most maxLength characters, cutting after the last newline
+     * of each part when it falls in its second half, and never inside a surrogate pair.
+     */
+    static List<String> split(String text, int maxLength) {
+        if (text.length() <= maxLength) {
+            return List.of(text);
+        }
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        while (text.length() - start > maxLength) {
+            int end = start + maxLength;
+            int newline = text.lastIndexOf('\n', end - 1);
+            if (newline >= start + maxLength / 2) {
+                end = newline + 1;
+            } else if (Character.isLowSurrogate(text.charAt(end))) {
+                end--;
+            }
+            parts.add(text.substring(start, end));
+            start = end;
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    /**
+     * Returns the URL of the given Bot API method, e.g. "sendMessage".
+     */
+    public String methodUrl(String method) {
+        return baseUrl + "/bot" + botToken + "/" + method;
+    }
+
+    private void runWorker() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                OutboundMessage message = coalesce(queue.take());
+                rateLimit(message.chatId());
+                deliver(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Unexpected error in Telegram delivery worker: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * If the queue is backing up, merges the following messages for the same chat into a single
+     * digest, as long as the result (header included) fits in one Telegram message.
+     */
+    OutboundMessage coalesce(OutboundMessage first) {
+        if (queue.size() < coalesceThreshold) {
+            return first;
+        }
+        StringBuilder digest = new StringBuilder(first.text());
+        int merged = 1;
+        for (OutboundMessage next = queue.peek(); next != null; next = queue.peek()) {
+            if (!next.chatId().equals(first.chatId())
+                    || digestHeader(merged + 1).length() + digest.length() + DIGEST_SEPARATOR.length()
+                            + next.text().length() > MAX_MESSAGE_LENGTH
+                    || !queue.remove(next)) {
+                break;
+            }
+            digest.append(DIGEST_SEPARATOR).append(next.text());
+            merged++;
+        }
+        if (merged == 1) {
+            return first;
+        }
+        return new OutboundMessage(first.chatId(), digestHeader(merged) + digest);
+    }
+
+    private static String digestHeader(int merged) {
+        return "Digest of " + merged + " alerts:\n\n";
+    }
+
+    private void rateLimit(String chatId) throws InterruptedException {
+        chatBuckets.computeIfAbsent(chatId, id -> new TokenBucket(chatRatePerSecond, chatBurst)).acquire();
+        globalBucket.acquire();
+    }
+
+    private void deliver(OutboundMessage message) throws InterruptedException {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("chat_id", message.chatId());
+        params.add("text", message.text());
+        long backoffMs = retryBackoffMs;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            try {
+                restTemplate.postForObject(methodUrl("sendMessage"), params, String.class);
+                sentCounter.increment();
+                return;
+            } catch (HttpClientErrorException.TooManyRequests e) {
+                long retryAfterMs = retryAfterMs(e.getResponseBodyAsString(), backoffMs);
+                log.warn("Telegram rate limit hit, retrying in {} ms", retryAfterMs);
+                TimeUnit.MILLISECONDS.sleep(retryAfterMs);
+            } catch (HttpClientErrorException e) {
+                // Other 4xx errors (bad chat id, malformed text...) will not succeed on retry.
+                log.error("Error sending telegram alert: {}", e.getMessage());
+                droppedCounter.increment();
+                return;
+            } catch (Exception e) {
+                log.warn("Error sending telegram alert (attempt {}): {}", attempt + 1, e.getMessage());
+                TimeUnit.MILLISECONDS.sleep(backoffMs);
+                backoffMs *= 2;
+            }
+        }
+        log.error("Giving up on telegram message for chat {} after {} retries", message.chatId(), maxRetries);
+        droppedCounter.increment();
+    }
+
+    /**
+     * Reads parameters.retry_after (seconds) from a Telegram error response.
+     */
+    private long retryAfterMs(String body, long fallbackMs) {
+        try {
+            JsonNode retryAfter = mapper.readTree(body).path("parameters").path("retry_after");
+            if (retryAfter.isNumber()) {
+                return TimeUnit.SECONDS.toMillis(retryAfter.asLong());
+            }
+        } catch (Exception e) {
+            // fall through to the default backoff
+        }
+        return fallbackMs;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workerThreads.forEach(Thread::interrupt);
+    }
+}
@@ -0,0 +1,263 @@
+package org.cheetah.monitoring.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sends files to Telegram (sendDocument) without holding them in the heap.
+ * The content is first spooled to a temporary file through a fixed-size buffer, optionally gzip-compressed
+ * on the fly and with a size limit, then streamed from the file to Telegram by a bounded pool of workers,
+ * and deleted once sent. The caller's thread only pays for the copy to disk.
+ */
+@Service
+@Slf4j
+public class TelegramDocumentService {
+
+    /** Maximum length of a Telegram document caption. */
+    public static final int MAX_CAPTION_LENGTH = 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TEXT_SLICE = 16 * 1024;
+
+    /**
+     * Outcome of a send request.
+     */
+    public enum Result {
+        QUEUED,
+        TOO_LARGE,
+        BUSY,
+        FAILED
+    }
+
+    @Value("${telegram.chat.id}")
+    private String telegramChatId;
+
+    @Value("${monitoring.documents.max-size-bytes:52428800}")
+    private long maxSizeBytes;
+
+    @Value("${monitoring.documents.workers:2}")
+    private int workers;
+
+    @Value("${monitoring.documents.queue-capacity:20}")
+    private int queueCapacity;
+
+    // Workers run on virtual threads when the virtual-thread mode is enabled.
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final TelegramDeliveryService telegramDeliveryService;
+    private final RestTemplate restTemplate;
+    private ExecutorService executor;
+
+    public TelegramDocumentService(TelegramDeliveryService telegramDeliveryService) {
+        this.telegramDeliveryService = telegramDeliveryService;
+        // Streams the request body in chunks instead of buffering it to compute the content length.
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setChunkSize(BUFFER_SIZE);
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    @PostConstruct
+    public void start() {
+        Thread.Builder builder = virtualThreads ? Thread.ofVirtual() : Thread.ofPlatform().daemon();
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), builder.name("telegram-document-", 0).factory());
+    }
+
+    /**
+     * Spools the content and queues it for delivery as a Telegram document.
+     * The stream is read until the end (or the size limit) but not closed.
+     *
+     * @param content  The document content.
+     * @param filename The name shown in Telegram (".gz" is appended when compressing).
+     * @param caption  Optional caption, truncated to the Telegram limit.
+     * @param compress Whether to gzip the content while spooling it.
+     */
+    public Result send(InputStream content, String filename, String caption, boolean compress) {
+        Path spooled;
+        try {
+            spooled = spool(content, compress);
+        } catch (IOException e) {
+            log.error("Error spooling document {}: {}", filename, e.getMessage());
+            return Result.FAILED;
+        }
+        if (spooled == null) {
+            return Result.TOO_LARGE;
+        }
+        return sendFile(spooled, compress ? filename + ".gz" : filename, caption);
+    }
+
+    /**
+     * Spools a text as UTF-8 and queues it for delivery as a Telegram document.
+     * The text is encoded in small slices, so no byte copy of the whole text is made.
+     *
+     * @see #send(InputStream, String, String, boolean)
+     */
+    public Result sendText(CharSequence text, String filename, String caption, boolean compress) {
+        Path spooled;
+        try {
+            spooled = spool(compress, (out, overLimit) -> {
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                for (int start = 0; start < text.length(); start += TEXT_SLICE) {
+                    writer.append(text, start, Math.min(text.length(), start + TEXT_SLICE));
+                    if (overLimit.getAsBoolean()) {
+                        return false;
+                    }
+                }
+                writer.flush();
+                return true;
+            });
+        } catch (IOException e) {
+            log.error("Error spooling document {}: {}", filename, e.getMessage());
+            return Result.FAILED;
+        }
+        if (spooled == null) {
+            return Result.TOO_LARGE;
+        }
+        return sendFile(spooled, compress ? filename + ".gz" : filename, caption);
+    }
+
+    /**
+     * Queues an already spooled file for delivery. The file is deleted once sent, or right away if it cannot be queued.
+     */
+    public Result sendFile(Path file, String filename, String caption) {
+        try {
+            executor.execute(() -> deliver(file, filename, caption));
+            return Result.QUEUED;
+        } catch (RejectedExecutionException e) {
+            log.warn("Telegram document queue is full, dropping {}", filename);
+            delete(file);
+            return Result.BUSY;
+        }
+    }
+
+    /**
+     * Copies the content to a new temporary file through a fixed-size buffer, optionally gzip-compressed.
+     * Returns null (and deletes the file) if the written size exceeds monitoring.documents.max-size-bytes.
+     */
+    public Path spool(InputStream content, boolean compress) throws IOException {
+        return spool(compress, (out, overLimit) -> {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (overLimit.getAsBoolean()) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Writes some content to a temporary file.
+     */
+    @FunctionalInterface
+    private interface ContentWriter {
+        /**
+         * Writes the content, checking overLimit after each chunk.
+         *
+         * @return false if the writing stopped because the size limit was exceeded.
+         */
+        boolean writeTo(OutputStream out, BooleanSupplier overLimit) throws IOException;
+    }
+
+    private Path spool(boolean compress, ContentWriter content) throws IOException {
+        Path file = Files.createTempFile("cheetah-document-", compress ? ".gz" : ".tmp");
+        boolean complete = false;
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+                 OutputStream out = compress
+                         ? new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)
+                         : Channels.newOutputStream(channel)) {
+                // For compressed output this is the size flushed so far, a lower bound of the final size.
+                BooleanSupplier overLimit = () -> {
+                    try {
+                        return channel.size() > maxSizeBytes;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                };
+                if (!content.writeTo(out, overLimit)) {
+                    return null;
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            complete = Files.size(file) <= maxSizeBytes;
+            return complete ? file : null;
+        } finally {
+            if (!complete) {
+                delete(file);
+            }
+        }
+    }
+
+    private void deliver(Path file, String filename, String caption) {
+        try {
+            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+            body.add("chat_id", telegramChatId);
+            if (caption != null && !caption.isEmpty()) {
+                body.add("caption", caption.length() > MAX_CAPTION_LENGTH ? caption.substring(0, MAX_CAPTION_LENGTH) : caption);
+            }
+            body.add("document", new FileSystemResource(file) {
+                @Override
+                public String getFilename() {
+                    return filename;
+                }
+            });
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+            restTemplate.postForEntity(telegramDeliveryService.methodUrl("sendDocument"), new HttpEntity<>(body, headers), String.class);
+        } catch (Exception e) {
+            log.error("Error sending document {}: {}", filename, e.getMessage());
+        } finally {
+            delete(file);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Error deleting temporary document {}: {}", file, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
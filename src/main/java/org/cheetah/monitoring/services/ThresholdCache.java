@@ -0,0 +1,125 @@
+package org.cheetah.monitoring.services;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bson.Document;
+import org.cheetah.monitoring.model.Threshold;
+import org.cheetah.monitoring.repositories.ThresholdRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory snapshot of the thresholds collection, keyed by metric type.
+ * The snapshot is an immutable map replaced atomically on every refresh, so readers on the
+ * ingest path never touch MongoDB and never see a half-updated table.
+ * It is reloaded at startup, after every change made through {@link ThresholdService},
+ * when a change stream event on the thresholds collection arrives (if enabled) and periodically
+ * as a safety net for changes made by other nodes.
+ */
+@Component
+@Slf4j
+public class ThresholdCache {
+
+    private final ThresholdRepository thresholdRepository;
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${monitoring.thresholds.change-stream.enabled:false}")
+    private boolean changeStreamEnabled;
+
+    private volatile Map<String, Threshold> snapshot = Map.of();
+    private MessageListenerContainer changeStreamContainer;
+
+    public ThresholdCache(ThresholdRepository thresholdRepository, MongoTemplate mongoTemplate) {
+        this.thresholdRepository = thresholdRepository;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        refresh();
+        if (changeStreamEnabled) {
+            startChangeStream();
+        }
+    }
+
+    /**
+     * Reloads all thresholds from MongoDB and swaps the snapshot.
+     */
+    public void refresh() {
+        try {
+            Map<String, Threshold> thresholds = new HashMap<>();
+            for (Threshold threshold : thresholdRepository.findAll()) {
+                thresholds.put(threshold.getMetricType(), threshold);
+            }
+            snapshot = Map.copyOf(thresholds);
+        } catch (Exception e) {
+            log.error("Error loading thresholds, keeping the previous snapshot: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${monitoring.thresholds.refresh-interval-ms:60000}",
+               initialDelayString = "${monitoring.thresholds.refresh-interval-ms:60000}")
+    public void periodicRefresh() {
+        refresh();
+    }
+
+    /**
+     * Returns the threshold configured for the given metric type, or null if none.
+     */
+    public Threshold get(String metricType) {
+        return snapshot.get(metricType);
+    }
+
+    /**
+     * Returns the threshold of the given metric name, falling back to the threshold of its base name
+     * (e.g. "disk_used_pct" for "disk_used_pct{mount=/var}"), or null if none.
+     */
+    public Threshold find(String metricName) {
+        Map<String, Threshold> current = snapshot;
+        Threshold threshold = current.get(metricName);
+        if (threshold == null && metricName.indexOf('{') > 0) {
+            threshold = current.get(MetricNameDictionary.baseName(metricName));
+        }
+        return threshold;
+    }
+
+    /**
+     * Returns the threshold value for the given metric type, or the default if none is configured.
+     */
+    public double getThresholdValue(String metricType, double defaultValue) {
+        Threshold threshold = snapshot.get(metricType);
+        return threshold != null ? threshold.getThresholdValue() : defaultValue;
+    }
+
+    /**
+     * Listens to the thresholds collection so changes made directly in MongoDB or by other nodes
+     * are picked up immediately. Change streams require a replica set.
+     */
+    private void startChangeStream() {
+        DefaultMessageListenerContainer container = new DefaultMessageListenerContainer(mongoTemplate);
+        ChangeStreamRequest<Document> request = ChangeStreamRequest.<Document>builder(message -> refresh())
+                .collection(mongoTemplate.getCollectionName(Threshold.class))
+                .build();
+        container.register(request, Document.class,
+                e -> log.warn("Threshold change stream error: {}", e.getMessage()));
+        container.start();
+        changeStreamContainer = container;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (changeStreamContainer != null) {
+            changeStreamContainer.stop();
+        }
+    }
+}
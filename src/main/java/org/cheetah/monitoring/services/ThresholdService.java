@@ -10,9 +10,11 @@ import org.springframework.stereotype.Service;
 public class ThresholdService {
 
     private final ThresholdRepository thresholdRepository;
+    private final ThresholdCache thresholdCache;
 
-    public ThresholdService(ThresholdRepository thresholdRepository) {
+    public ThresholdService(ThresholdRepository thresholdRepository, ThresholdCache thresholdCache) {
         this.thresholdRepository = thresholdRepository;
+        this.thresholdCache = thresholdCache;
     }
 
     /**
@@ -38,7 +40,9 @@ public class ThresholdService {
         if (existing != null) {
             return null;
         }
-        return thresholdRepository.save(threshold);
+        Threshold saved = thresholdRepository.save(threshold);
+        thresholdCache.refresh();
+        return saved;
     }
 
     /**
@@ -50,7 +54,13 @@ public class ThresholdService {
             return null;
         }
         existing.setThresholdValue(thresholdUpdate.getThresholdValue());
-        return thresholdRepository.save(existing);
+        existing.setWindowMs(thresholdUpdate.getWindowMs());
+        existing.setConsecutiveSamples(thresholdUpdate.getConsecutiveSamples());
+        existing.setMinRatePerMinute(thresholdUpdate.getMinRatePerMinute());
+        existing.setRecoveryValue(thresholdUpdate.getRecoveryValue());
+        Threshold saved = thresholdRepository.save(existing);
+        thresholdCache.refresh();
+        return saved;
     }
 
     /**
@@ -62,6 +72,7 @@ public class ThresholdService {
             return false;
         }
         thresholdRepository.delete(existing);
+        thresholdCache.refresh();
         return true;
     }
 }
\ No newline at end of file
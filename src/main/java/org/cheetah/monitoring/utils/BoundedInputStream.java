@@ -0,0 +1,66 @@
+package org.cheetah.monitoring.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that fails once more than a given number of bytes has been read from it,
+ * e.g. to stop a request body (or what it decompresses to) from growing without bound.
+ */
+public class BoundedInputStream extends FilterInputStream {
+
+    /**
+     * Thrown when the stream goes past its limit.
+     */
+    public static class LimitExceededException extends IOException {
+        public LimitExceededException(long limit) {
+            super("input exceeds " + limit + " bytes");
+        }
+    }
+
+    private final long limit;
+    private long count;
+
+    public BoundedInputStream(InputStream in, long limit) {
+        super(in);
+        this.limit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = super.read();
+        if (read != -1) {
+            count(1);
+        }
+        return read;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            count(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long read) throws LimitExceededException {
+        count += read;
+        if (count > limit) {
+            throw new LimitExceededException(limit);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.cheetah.monitoring.utils;
+
+/**
+ * Fits a log into a bounded number of characters by keeping its head and its tail
+ * (where errors usually are) around an "omitted" marker.
+ * Only the two excerpts are copied, never the whole log; cuts fall on line boundaries when possible
+ * and never split a surrogate pair.
+ */
+public final class LogExcerpt {
+
+    private LogExcerpt() {
+    }
+
+    /**
+     * Returns the log unchanged if it fits in maxLength characters, otherwise its head and tail
+     * joined by the marker, within maxLength characters overall.
+     *
+     * @param log       The full log.
+     * @param maxLength Maximum length of the result.
+     * @param marker    Text placed between head and tail; "%d" is replaced by the number of omitted characters.
+     */
+    public static String of(String log, int maxLength, String marker) {
+        if (log.length() <= maxLength) {
+            return log;
+        }
+        // Reserve room for the marker with the largest possible count.
+        int budget = maxLength - String.format(marker, log.length()).length();
+        if (budget <= 0) {
+            return String.format(marker, log.length()).substring(0, Math.max(0, maxLength));
+        }
+        // A third for the head, the rest for the tail.
+        int headEnd = lineCut(log, budget / 3, true);
+        int tailStart = lineCut(log, log.length() - (budget - headEnd), false);
+        StringBuilder excerpt = new StringBuilder(maxLength);
+        excerpt.append(log, 0, headEnd)
+                .append(String.format(marker, tailStart - headEnd))
+                .append(log, tailStart, log.length());
+        return excerpt.toString();
+    }
+
+    /**
+     * Moves a cut position to a line boundary within the last quarter of the excerpt (backwards for the head,
+     * forwards for the tail), and off the middle of a surrogate pair.
+     */
+    private static int lineCut(String log, int position, boolean head) {
+        int slack = head ? position / 4 : (log.length() - position) / 4;
+        if (head) {
+            int newline = log.lastIndexOf('\n', position - 1);
+            if (newline >= 0 && newline >= position - slack) {
+                return newline + 1;
+            }
+        } else {
+            int newline = log.indexOf('\n', position);
+            if (newline >= 0 && newline + 1 <= position + slack) {
+                return newline + 1;
+            }
+        }
+        if (position > 0 && position < log.length() && Character.isLowSurrogate(log.charAt(position))) {
+            return head ? position - 1 : position + 1;
+        }
+        return position;
+    }
+}
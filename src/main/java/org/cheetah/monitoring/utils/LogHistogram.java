@@ -0,0 +1,76 @@
+package org.cheetah.monitoring.utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Log-linear histogram bins used to compute percentiles from counts that can be merged
+ * with a plain {@code $inc} in MongoDB.
+ * Each power of two is split into {@value #SUB_BUCKETS} linear sub-buckets, so the relative
+ * error of a percentile is below 2% whatever the magnitude of the metric.
+ */
+public final class LogHistogram {
+
+    private static final int SUB_BUCKETS = 64;
+
+    private LogHistogram() {
+    }
+
+    /**
+     * Returns the bin of the given value. Values below 1 (including zero and negatives) share the first bins.
+     */
+    public static int bin(double value) {
+        if (!(value > 0)) {
+            return 0;
+        }
+        if (value < 1) {
+            return 1;
+        }
+        int exponent = Math.getExponent(value);
+        int sub = (int) ((value / Math.scalb(1.0, exponent) - 1) * SUB_BUCKETS);
+        return 2 + exponent * SUB_BUCKETS + Math.min(sub, SUB_BUCKETS - 1);
+    }
+
+    /**
+     * Returns the value representing the given bin (the middle of its range).
+     */
+    public static double value(int bin) {
+        if (bin <= 0) {
+            return 0;
+        }
+        if (bin == 1) {
+            return 0.5;
+        }
+        int exponent = (bin - 2) / SUB_BUCKETS;
+        int sub = (bin - 2) % SUB_BUCKETS;
+        return Math.scalb(1.0, exponent) * (1 + (sub + 0.5) / SUB_BUCKETS);
+    }
+
+    /**
+     * Computes a percentile from sparse bin counts keyed by bin number.
+     *
+     * @param bins     Bin number (as string, as stored in MongoDB) to count.
+     * @param fraction The percentile as a fraction, e.g. 0.95.
+     * @return the percentile, or NaN if the histogram is empty.
+     */
+    public static double percentile(Map<String, Long> bins, double fraction) {
+        if (bins == null || bins.isEmpty()) {
+            return Double.NaN;
+        }
+        TreeMap<Integer, Long> sorted = new TreeMap<>();
+        long total = 0;
+        for (Map.Entry<String, Long> entry : bins.entrySet()) {
+            sorted.put(Integer.parseInt(entry.getKey()), entry.getValue());
+            total += entry.getValue();
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (Map.Entry<Integer, Long> entry : sorted.entrySet()) {
+            seen += entry.getValue();
+            if (seen >= rank) {
+                return value(entry.getKey());
+            }
+        }
+        return value(sorted.lastKey());
+    }
+}
@@ -0,0 +1,187 @@
+package org.cheetah.monitoring.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.cheetah.monitoring.model.Metrics;
+import org.cheetah.monitoring.model.MetricRollup;
+
+/**
+ * Lazily groups a time-ordered stream of samples or rollups into one aggregated point per step.
+ * Only the point being built is kept in memory, so arbitrarily long ranges can be streamed.
+ */
+public final class MetricsAggregator {
+
+    /** Supported aggregation functions. */
+    public static final Set<String> FUNCTIONS = Set.of("avg", "min", "max", "p95");
+
+    private MetricsAggregator() {
+    }
+
+    /**
+     * Aggregates raw samples, which must be ordered by timestamp.
+     */
+    public static Stream<Metrics> aggregateSamples(Stream<Metrics> samples, long step, String agg) {
+        return aggregate(samples, step, agg, Metrics::getTimestamp, Point::add);
+    }
+
+    /**
+     * Aggregates rollups, which must be ordered by bucket start. The rollup resolution must not be larger than the step.
+     */
+    public static Stream<Metrics> aggregateRollups(Stream<MetricRollup> rollups, long step, String agg) {
+        return aggregate(rollups, step, agg, MetricRollup::getBucketStart, Point::add);
+    }
+
+    private static <T> Stream<Metrics> aggregate(Stream<T> source, long step, String agg,
+                                                 ToLongFunction<T> timestampOf, BiConsumer<Point, T> add) {
+        Iterator<T> items = source.iterator();
+        Iterator<Metrics> points = new Iterator<>() {
+            private T pending;
+
+            @Override
+            public boolean hasNext() {
+                return pending != null || items.hasNext();
+            }
+
+            @Override
+            public Metrics next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                T item = pending != null ? pending : items.next();
+                pending = null;
+                long start = stepStart(timestampOf.applyAsLong(item), step);
+                Point point = new Point(start, "p95".equals(agg));
+                add.accept(point, item);
+                while (items.hasNext()) {
+                    item = items.next();
+                    if (stepStart(timestampOf.applyAsLong(item), step) != start) {
+                        pending = item;
+                        break;
+                    }
+                    add.accept(point, item);
+                }
+                return point.toMetrics(agg);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(points, Spliterator.ORDERED), false)
+                .onClose(source::close);
+    }
+
+    private static long stepStart(long timestamp, long step) {
+        return timestamp - Math.floorMod(timestamp, step);
+    }
+
+    /**
+     * Running statistics of one metric within one step.
+     */
+    private static final class Stat {
+        private long count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private Map<String, Long> histogram;
+
+        private void add(double value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            if (histogram != null) {
+                histogram.merge(String.valueOf(LogHistogram.bin(value)), 1L, Long::sum);
+            }
+        }
+
+        private void merge(MetricRollup rollup) {
+            count += rollup.getCount();
+            sum += rollup.getSum();
+            min = Math.min(min, rollup.getMin());
+            max = Math.max(max, rollup.getMax());
+            if (histogram != null && rollup.getHistogram() != null) {
+                rollup.getHistogram().forEach((bin, n) -> histogram.merge(bin, n, Long::sum));
+            }
+        }
+
+        private double value(String agg) {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            return switch (agg) {
+                case "min" -> min;
+                case "max" -> max;
+                case "p95" -> Math.max(min, Math.min(max, LogHistogram.percentile(histogram, 0.95)));
+                default -> sum / count;
+            };
+        }
+    }
+
+    /**
+     * Aggregated point being built, with one Stat per metric name.
+     */
+    private static final class Point {
+        private final long start;
+        private final boolean percentiles;
+        private final Map<String, Stat> stats = new LinkedHashMap<>();
+        private String hostname;
+        private String ip;
+
+        private Point(long start, boolean percentiles) {
+            this.start = start;
+            this.percentiles = percentiles;
+        }
+
+        private Stat stat(String metric) {
+            return stats.computeIfAbsent(metric, m -> {
+                Stat stat = new Stat();
+                if (percentiles) {
+                    stat.histogram = new HashMap<>();
+                }
+                return stat;
+            });
+        }
+
+        private void add(Metrics metrics) {
+            hostname = metrics.getHostname();
+            ip = metrics.getIp();
+            metrics.forEachValue((metric, value) -> stat(metric).add(value));
+        }
+
+        private void add(MetricRollup rollup) {
+            hostname = rollup.getHostname();
+            stat(rollup.getMetric()).merge(rollup);
+        }
+
+        private double value(String metric, String agg) {
+            Stat stat = stats.get(metric);
+            return stat != null ? stat.value(agg) : Double.NaN;
+        }
+
+        private Metrics toMetrics(String agg) {
+            Map<String, Double> values = new LinkedHashMap<>();
+            stats.forEach((metric, stat) -> {
+                if (!Metrics.CPU.equals(metric) && !Metrics.DISK.equals(metric) && !Metrics.RAM.equals(metric)) {
+                    values.put(metric, stat.value(agg));
+                }
+            });
+            return Metrics.builder()
+                    .hostname(hostname)
+                    .ip(ip)
+                    .timestamp(start)
+                    .cpuUsage(value(Metrics.CPU, agg))
+                    .diskUsage(value(Metrics.DISK, agg))
+                    .ramUsage(value(Metrics.RAM, agg))
+                    .values(values.isEmpty() ? null : values)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.cheetah.monitoring.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket rate limiter.
+ * Implemented as a generic cell rate algorithm: the whole state is a single "theoretical arrival time"
+ * updated with compare-and-set, so acquiring a permit never blocks other threads.
+ */
+public final class TokenBucket {
+
+    // Upper bound of the interval and of the burst tolerance, so the arithmetic on System.nanoTime()
+    // cannot overflow even for a tiny rate with a large burst.
+    private static final long MAX_SPAN_NANOS = TimeUnit.DAYS.toNanos(365);
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param permitsPerSecond Sustained rate at which permits are refilled.
+     * @param burst            Maximum number of permits that can be taken at once after an idle period.
+     *                         For very low rates the burst is limited to what is refilled in a year.
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond must be > 0 and burst >= 1");
+        }
+        double interval = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.intervalNanos = (long) Math.max(1, Math.min(MAX_SPAN_NANOS, interval));
+        this.toleranceNanos = (long) Math.min(MAX_SPAN_NANOS, (double) intervalNanos * burst);
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a permit if one is available right now.
+     *
+     * @return true if the permit was taken.
+     */
+    public boolean tryAcquire() {
+        return reserveOrWait() == 0;
+    }
+
+    /**
+     * Takes a permit if one is available, otherwise returns how long to wait before trying again.
+     *
+     * @return 0 if the permit was taken, otherwise the number of nanoseconds until one is available.
+     */
+    public long reserveOrWait() {
+        while (true) {
+            long now = System.nanoTime();
+            long arrival = theoreticalArrival.get();
+            long next = Math.max(arrival, now) + intervalNanos;
+            long allowedAt = next - toleranceNanos;
+            if (allowedAt > now) {
+                return allowedAt - now;
+            }
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Blocks until a permit is available and takes it.
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = reserveOrWait()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.cheetah.monitoring.job;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class PortProberTest {
+
+	private final PortProber prober = new PortProber(200, 100, 2);
+
+	@AfterEach
+	void tearDown() {
+		prober.shutdown();
+	}
+
+	private Map<?, ?> hostPermits() {
+		return (Map<?, ?>) ReflectionTestUtils.getField(prober, "hostPermits");
+	}
+
+	@Test
+	void detectsOpenAndClosedPorts() throws Exception {
+		int closedPort;
+		try (ServerSocket closed = new ServerSocket(0)) {
+			closedPort = closed.getLocalPort();
+		}
+		try (ServerSocket open = new ServerSocket(0)) {
+			assertThat(prober.probe(new ProbeTarget("127.0.0.1", open.getLocalPort())).get()).isTrue();
+		}
+		assertThat(prober.probe(new ProbeTarget("127.0.0.1", closedPort)).get()).isFalse();
+	}
+
+	@Test
+	void removesTheHostSemaphoreOnceItsProbesAreDone() throws Exception {
+		try (ServerSocket open = new ServerSocket(0, 50)) {
+			List<CompletableFuture<Boolean>> probes = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				probes.add(prober.probe(new ProbeTarget("127.0.0.1", open.getLocalPort())));
+			}
+			CompletableFuture.allOf(probes.toArray(CompletableFuture[]::new)).get();
+		}
+
+		assertThat(hostPermits()).isEmpty();
+	}
+}
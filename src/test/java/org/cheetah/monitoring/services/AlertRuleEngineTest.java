@@ -0,0 +1,177 @@
+package org.cheetah.monitoring.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.cheetah.monitoring.model.Metrics;
+import org.cheetah.monitoring.model.Threshold;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class AlertRuleEngineTest {
+
+	private static final String METRIC = "load1";
+
+	private final ThresholdCache thresholdCache = mock(ThresholdCache.class);
+	private final List<String> transitions = new ArrayList<>();
+	private AlertRuleEngine engine;
+	private boolean deliver;
+
+	@BeforeEach
+	void setUp() {
+		engine = new AlertRuleEngine(thresholdCache);
+		ReflectionTestUtils.setField(engine, "maxWindowSamples", 16);
+		deliver = true;
+	}
+
+	private void rule(Threshold.ThresholdBuilder rule) {
+		when(thresholdCache.find(METRIC)).thenReturn(rule.metricType(METRIC).build());
+	}
+
+	private void sample(long timestamp, double value) {
+		Metrics metrics = Metrics.builder()
+				.hostname("host")
+				.ip("10.0.0.1")
+				.timestamp(timestamp)
+				.values(Map.of(METRIC, value))
+				.build();
+		engine.evaluate(metrics, (metric, evaluated, rule, firing) -> {
+			if (METRIC.equals(metric)) {
+				transitions.add((firing ? "fire " : "recover ") + evaluated);
+			}
+			return deliver;
+		});
+	}
+
+	@Test
+	void firesOnceAndRecoversOnce() {
+		rule(Threshold.builder().thresholdValue(10));
+
+		sample(1000, 5);
+		sample(2000, 12);
+		sample(3000, 15);
+		sample(4000, 8);
+		sample(5000, 7);
+
+		assertThat(transitions).containsExactly("fire 12.0", "recover 8.0");
+	}
+
+	@Test
+	void requiresConsecutiveSamplesToFireAndToRecover() {
+		rule(Threshold.builder().thresholdValue(10).consecutiveSamples(2));
+
+		sample(1000, 12);
+		sample(2000, 5);
+		sample(3000, 12);
+		assertThat(transitions).isEmpty();
+
+		sample(4000, 13);
+		assertThat(transitions).containsExactly("fire 13.0");
+
+		sample(5000, 5);
+		sample(6000, 11);
+		sample(7000, 5);
+		assertThat(transitions).containsExactly("fire 13.0");
+
+		sample(8000, 4);
+		assertThat(transitions).containsExactly("fire 13.0", "recover 4.0");
+	}
+
+	@Test
+	void recoversOnlyBelowTheRecoveryValue() {
+		rule(Threshold.builder().thresholdValue(10).recoveryValue(8.0));
+
+		sample(1000, 11);
+		sample(2000, 9);
+		assertThat(transitions).containsExactly("fire 11.0");
+
+		sample(3000, 7.5);
+		assertThat(transitions).containsExactly("fire 11.0", "recover 7.5");
+	}
+
+	@Test
+	void recoveryValueAboveTheThresholdIsCapped() {
+		rule(Threshold.builder().thresholdValue(10).recoveryValue(20.0));
+
+		sample(1000, 11);
+		sample(2000, 15);
+		assertThat(transitions).containsExactly("fire 11.0");
+	}
+
+	@Test
+	void rateGatesFiringButNotRecovery() {
+		rule(Threshold.builder().thresholdValue(10).minRatePerMinute(5.0));
+
+		// Above the threshold but flat: no alert.
+		sample(0, 20);
+		sample(60000, 20);
+		assertThat(transitions).isEmpty();
+
+		sample(120000, 30);
+		assertThat(transitions).containsExactly("fire 30.0");
+
+		// Stopped growing but still high: still firing.
+		sample(180000, 30);
+		sample(240000, 29);
+		assertThat(transitions).containsExactly("fire 30.0");
+
+		sample(300000, 9);
+		assertThat(transitions).containsExactly("fire 30.0", "recover 9.0");
+	}
+
+	@Test
+	void pureRateRuleRecoversWhenGrowthStops() {
+		rule(Threshold.builder().thresholdValue(0).minRatePerMinute(5.0));
+
+		sample(0, 20);
+		sample(60000, 30);
+		sample(120000, 31);
+
+		assertThat(transitions).containsExactly("fire 30.0", "recover 31.0");
+	}
+
+	@Test
+	void comparesTheAverageOverTheWindow() {
+		rule(Threshold.builder().thresholdValue(10).windowMs(2000L));
+
+		sample(1000, 4);
+		sample(2000, 4);
+		sample(3000, 25);
+		assertThat(transitions).containsExactly("fire 11.0");
+
+		// Single samples below the threshold, but the window average is still 11.
+		sample(4000, 4);
+		sample(5000, 4);
+		assertThat(transitions).containsExactly("fire 11.0");
+
+		sample(6000, 4);
+		assertThat(transitions).containsExactly("fire 11.0", "recover 4.0");
+	}
+
+	@Test
+	void ignoresSamplesOlderThanTheLatest() {
+		rule(Threshold.builder().thresholdValue(10));
+
+		sample(2000, 5);
+		sample(1000, 50);
+
+		assertThat(transitions).isEmpty();
+	}
+
+	@Test
+	void doesNotReportTheRecoveryOfASuppressedAlert() {
+		rule(Threshold.builder().thresholdValue(10));
+		deliver = false;
+
+		sample(1000, 12);
+		sample(2000, 5);
+
+		assertThat(transitions).containsExactly("fire 12.0");
+	}
+}
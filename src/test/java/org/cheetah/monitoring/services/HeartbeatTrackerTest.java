@@ -0,0 +1,162 @@
+package org.cheetah.monitoring.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.cheetah.monitoring.model.AgentInfo;
+import org.cheetah.monitoring.repositories.AgentInfoRepository;
+import org.cheetah.monitoring.repositories.AlertRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class HeartbeatTrackerTest {
+
+	private static final long TIMEOUT_MS = 60000;
+	private static final long TICK_MS = 1000;
+
+	private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+	private final AgentInfoRepository agentInfoRepository = mock(AgentInfoRepository.class);
+	private final AlertService alertService = mock(AlertService.class);
+	private final AlertDeduplicator alertDeduplicator = mock(AlertDeduplicator.class);
+	private final ClusterMembershipService clusterMembershipService = mock(ClusterMembershipService.class);
+
+	private HeartbeatTracker tracker;
+	private long now;
+
+	@BeforeEach
+	void setUp() {
+		now = System.currentTimeMillis();
+		when(clusterMembershipService.owns(anyString())).thenReturn(true);
+		when(alertDeduplicator.tryAcquire(any(), eq("SILENT"), any())).thenReturn(true);
+		tracker = new HeartbeatTracker(mongoTemplate, agentInfoRepository, mock(AlertRepository.class), alertService,
+				alertDeduplicator, clusterMembershipService);
+		ReflectionTestUtils.setField(tracker, "timeoutMs", TIMEOUT_MS);
+		ReflectionTestUtils.setField(tracker, "tickMs", TICK_MS);
+	}
+
+	private void start(AgentInfo... agents) {
+		when(agentInfoRepository.streamAllForHeartbeats()).thenAnswer(invocation -> List.of(agents).stream());
+		tracker.init();
+	}
+
+	private AgentInfo agent(String hostname, long lastHeartbeat) {
+		return AgentInfo.builder().hostname(hostname).ip("10.0.0.1").lastHeartbeat(lastHeartbeat).build();
+	}
+
+	@Test
+	void silentHostRaisesOneAlert() {
+		start(agent("a", now));
+
+		tracker.tick(now + TIMEOUT_MS / 2);
+		verifyNoInteractions(alertService);
+
+		tracker.tick(now + TIMEOUT_MS + 2 * TICK_MS);
+		tracker.tick(now + 3 * TIMEOUT_MS);
+		verify(alertService, times(1)).sendCustomTelegramAlert(eq("SILENT"), contains("Agent a (10.0.0.1) has not reported"));
+	}
+
+	@Test
+	void heartbeatStoredByAnotherNodeDefersTheAlert() {
+		when(mongoTemplate.findOne(any(Query.class), eq(AgentInfo.class))).thenReturn(agent("a", now + 50000));
+		start(agent("a", now));
+
+		tracker.tick(now + TIMEOUT_MS + 2 * TICK_MS);
+		verifyNoInteractions(alertService);
+
+		tracker.tick(now + 50000 + TIMEOUT_MS + 2 * TICK_MS);
+		verify(alertService, times(1)).sendCustomTelegramAlert(eq("SILENT"), anyString());
+	}
+
+	@Test
+	void databaseErrorDoesNotRaiseAnAlert() {
+		when(mongoTemplate.findOne(any(Query.class), eq(AgentInfo.class))).thenThrow(new RuntimeException("down"));
+		start(agent("a", now));
+
+		tracker.tick(now + TIMEOUT_MS + 2 * TICK_MS);
+
+		verifyNoInteractions(alertService);
+	}
+
+	@Test
+	void hostOwnedByAnotherNodeIsParkedForATimeout() {
+		when(clusterMembershipService.owns("a")).thenReturn(false);
+		start(agent("a", now));
+
+		for (long t = now + TIMEOUT_MS; t < now + 2 * TIMEOUT_MS - 2 * TICK_MS; t += TICK_MS) {
+			tracker.tick(t);
+		}
+
+		verify(clusterMembershipService, times(1)).owns("a");
+		verify(mongoTemplate, never()).findOne(any(Query.class), eq(AgentInfo.class));
+		verifyNoInteractions(alertService);
+	}
+
+	@Test
+	void unknownHostsAreNotTracked() {
+		start();
+
+		tracker.beat("ghost", "10.0.0.9");
+		tracker.tick(now + 3 * TIMEOUT_MS);
+
+		assertThat((Map<?, ?>) ReflectionTestUtils.getField(tracker, "slots")).isEmpty();
+		verifyNoInteractions(alertService);
+	}
+
+	@Test
+	void registeredHostIsTracked() {
+		start();
+
+		tracker.registered("b", "10.0.0.2");
+		tracker.tick(now + TIMEOUT_MS + 2 * TICK_MS);
+
+		verify(alertService).sendCustomTelegramAlert(eq("SILENT"), contains("Agent b (10.0.0.2)"));
+	}
+
+	@Test
+	void reportingAgainAfterAnAlertSendsTheRecovery() {
+		start(agent("a", now));
+		tracker.tick(now + TIMEOUT_MS + 2 * TICK_MS);
+
+		tracker.beat("a", "10.0.0.1");
+		tracker.beat("a", "10.0.0.1");
+
+		verify(alertService, times(1)).sendCustomTelegramAlert(eq("SILENT"), contains("Resolved: agent a"));
+		verify(alertDeduplicator).release("10.0.0.1", "SILENT", null);
+	}
+
+	@Test
+	void noRecoveryWhenTheAlertWasSuppressed() {
+		when(alertDeduplicator.tryAcquire(any(), eq("SILENT"), any())).thenReturn(false);
+		start(agent("a", now));
+		tracker.tick(now + TIMEOUT_MS + 2 * TICK_MS);
+
+		tracker.beat("a", "10.0.0.1");
+
+		verifyNoInteractions(alertService);
+	}
+
+	@Test
+	void agentSilentAtStartupIsNeitherAlertedNorRecovered() {
+		start(agent("a", now - 2 * TIMEOUT_MS));
+
+		tracker.tick(now + 3 * TIMEOUT_MS);
+		tracker.beat("a", "10.0.0.1");
+
+		verifyNoInteractions(alertService);
+	}
+}
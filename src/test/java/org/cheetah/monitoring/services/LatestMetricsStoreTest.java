@@ -0,0 +1,60 @@
+package org.cheetah.monitoring.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.cheetah.monitoring.model.Metrics;
+import org.cheetah.monitoring.repositories.MetricsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class LatestMetricsStoreTest {
+
+	private final HeartbeatTracker heartbeatTracker = mock(HeartbeatTracker.class);
+	private LatestMetricsStore store;
+
+	@BeforeEach
+	void setUp() {
+		when(heartbeatTracker.isTracked("a")).thenReturn(true);
+		store = new LatestMetricsStore(mock(MetricsRepository.class), mock(MetricNameDictionary.class), heartbeatTracker);
+		ReflectionTestUtils.setField(store, "idleTimeoutMs", 60000L);
+	}
+
+	private Metrics sample(String hostname, long timestamp, double cpuUsage) {
+		return Metrics.builder().hostname(hostname).ip("10.0.0.1").timestamp(timestamp).cpuUsage(cpuUsage).build();
+	}
+
+	@Test
+	void keepsTheLatestSampleOfARegisteredHost() {
+		store.update(sample("a", 2000, 20));
+		store.update(sample("a", 1000, 10));
+
+		assertThat(store.get("a").getCpuUsage()).isEqualTo(20);
+		assertThat(store.getAll()).extracting(Metrics::getHostname).containsExactly("a");
+	}
+
+	@Test
+	void ignoresHostsThatAreNotRegistered() {
+		store.update(sample("ghost", 1000, 10));
+
+		assertThat(store.get("ghost")).isNull();
+		assertThat(store.getAll()).isEmpty();
+	}
+
+	@Test
+	void evictsIdleHostsAndTracksThemAgainOnTheNextSample() {
+		store.update(sample("a", 1000, 10));
+
+		store.evictIdle();
+		assertThat(store.get("a")).isNotNull();
+
+		ReflectionTestUtils.setField(store, "idleTimeoutMs", -1L);
+		store.evictIdle();
+		assertThat(store.get("a")).isNull();
+
+		store.update(sample("a", 2000, 20));
+		assertThat(store.get("a").getCpuUsage()).isEqualTo(20);
+	}
+}
@@ -0,0 +1,100 @@
+package org.cheetah.monitoring.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cheetah.monitoring.model.Metrics;
+import org.cheetah.monitoring.repositories.MetricsRepository;
+import org.cheetah.monitoring.repositories.MetricsRepositoryCustom.BatchResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MetricsServiceTest {
+
+	private final MetricsRepository metricsRepository = mock(MetricsRepository.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private MetricsService service;
+
+	@BeforeEach
+	void setUp() {
+		service = new MetricsService();
+		ReflectionTestUtils.setField(service, "metricsRepository", metricsRepository);
+		ReflectionTestUtils.setField(service, "alertService", mock(AlertService.class));
+		ReflectionTestUtils.setField(service, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(service, "latestMetricsStore", mock(LatestMetricsStore.class));
+		ReflectionTestUtils.setField(service, "rollupService", mock(RollupService.class));
+		ReflectionTestUtils.setField(service, "metricNameDictionary", mock(MetricNameDictionary.class));
+		ReflectionTestUtils.setField(service, "heartbeatTracker", mock(HeartbeatTracker.class));
+		ReflectionTestUtils.setField(service, "queueCapacity", 100);
+		ReflectionTestUtils.setField(service, "batchSize", 10);
+		service.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		((ExecutorService) ReflectionTestUtils.getField(service, "flushExecutor")).shutdownNow();
+	}
+
+	private Metrics sample(long timestamp) {
+		return Metrics.builder().hostname("a").ip("10.0.0.1").timestamp(timestamp).build();
+	}
+
+	private int queued() {
+		return ((AtomicInteger) ReflectionTestUtils.getField(service, "queueSize")).get();
+	}
+
+	private double dropped() {
+		return meterRegistry.counter("cheetah.ingest.dropped").count();
+	}
+
+	@Test
+	void transientErrorRequeuesTheBatch() {
+		when(metricsRepository.insertBatch(anyList())).thenThrow(new DataAccessResourceFailureException("timeout"));
+		service.saveMetrics(sample(1));
+		service.saveMetrics(sample(2));
+
+		service.flush();
+
+		assertThat(queued()).isEqualTo(2);
+		assertThat(dropped()).isZero();
+	}
+
+	@Test
+	void permanentErrorDropsTheBatch() {
+		when(metricsRepository.insertBatch(anyList())).thenThrow(new InvalidDataAccessApiUsageException("bad"));
+		service.saveMetrics(sample(1));
+		service.saveMetrics(sample(2));
+
+		service.flush();
+
+		assertThat(queued()).isZero();
+		assertThat(dropped()).isEqualTo(2);
+	}
+
+	@Test
+	void partialFailureRequeuesOnlyTheRetryableSamples() {
+		Metrics retried = sample(2);
+		when(metricsRepository.insertBatch(anyList())).thenReturn(new BatchResult(List.of(retried), 1));
+		service.saveMetrics(sample(1));
+		service.saveMetrics(retried);
+		service.saveMetrics(sample(3));
+
+		service.flush();
+
+		assertThat(queued()).isEqualTo(1);
+		assertThat(dropped()).isEqualTo(1);
+		assertThat(meterRegistry.counter("cheetah.ingest.written").count()).isEqualTo(1);
+	}
+}
@@ -0,0 +1,77 @@
+package org.cheetah.monitoring.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.cheetah.monitoring.model.MetricRollup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class RollupServiceTest {
+
+	private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+	private final BulkOperations bulk = mock(BulkOperations.class);
+	private RollupService service;
+
+	@BeforeEach
+	void setUp() {
+		when(mongoTemplate.bulkOps(eq(BulkMode.UNORDERED), eq(MetricRollup.class), anyString())).thenReturn(bulk);
+		service = new RollupService(mongoTemplate, 604800000L, 7776000000L, 157680000000L);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, ?> hosts() {
+		return (Map<String, ?>) ReflectionTestUtils.getField(service, "hosts");
+	}
+
+	private void idle(String hostname) {
+		ReflectionTestUtils.setField(hosts().get(hostname), "lastRecordAt", 0L);
+	}
+
+	@Test
+	void activeHostIsKeptAfterAFlush() {
+		service.record("a", "CPU", System.currentTimeMillis(), 10);
+
+		service.flush();
+
+		assertThat(hosts()).containsKey("a");
+	}
+
+	@Test
+	void idleHostIsDroppedOnceItsDeltasAreWritten() {
+		service.record("a", "CPU", System.currentTimeMillis(), 10);
+		idle("a");
+
+		service.flush();
+
+		verify(bulk, atLeastOnce()).upsert(any(Query.class), any(Update.class));
+		assertThat(hosts()).isEmpty();
+	}
+
+	@Test
+	void deltasOfAnIdleHostAreKeptWhenTheWriteFails() {
+		when(bulk.execute()).thenThrow(new RuntimeException("down"));
+		service.record("a", "CPU", System.currentTimeMillis(), 10);
+		idle("a");
+
+		service.flush();
+
+		assertThat(hosts()).containsKey("a");
+		assertThat((List<?>) ReflectionTestUtils.getField(hosts().get("a"), "closed")).hasSize(3);
+	}
+}
@@ -0,0 +1,107 @@
+package org.cheetah.monitoring.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+import org.cheetah.monitoring.services.TelegramDeliveryService.OutboundMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TelegramDeliveryServiceTest {
+
+	private TelegramDeliveryService service;
+
+	@BeforeEach
+	void setUp() {
+		service = new TelegramDeliveryService(new SimpleMeterRegistry(), 1000, 30);
+		ReflectionTestUtils.setField(service, "coalesceThreshold", 1);
+	}
+
+	@Test
+	void coalesceMergesMessagesOfTheSameChat() {
+		service.enqueue("chat", "second");
+		service.enqueue("chat", "third");
+		service.enqueue("other", "fourth");
+
+		OutboundMessage digest = service.coalesce(new OutboundMessage("chat", "first"));
+
+		assertThat(digest.chatId()).isEqualTo("chat");
+		assertThat(digest.text()).isEqualTo("Digest of 3 alerts:\n\nfirst\n\nsecond\n\nthird");
+	}
+
+	@Test
+	void coalesceLeavesMessageAloneBelowThreshold() {
+		ReflectionTestUtils.setField(service, "coalesceThreshold", 5);
+		service.enqueue("chat", "second");
+
+		OutboundMessage message = service.coalesce(new OutboundMessage("chat", "first"));
+
+		assertThat(message.text()).isEqualTo("first");
+	}
+
+	@Test
+	void coalesceCountsTheHeaderInTheLengthLimit() {
+		// Two messages whose texts fit exactly, but not with the digest header.
+		String half = "x".repeat((TelegramDeliveryService.MAX_MESSAGE_LENGTH - 2) / 2);
+		service.enqueue("chat", half);
+		service.enqueue("chat", "next");
+
+		OutboundMessage message = service.coalesce(new OutboundMessage("chat", half));
+
+		assertThat(message.text()).isEqualTo(half);
+	}
+
+	@Test
+	void coalesceNeverExceedsTheMessageLimit() {
+		for (int i = 0; i < 200; i++) {
+			service.enqueue("chat", "alert " + i + " " + "y".repeat(i * 7));
+		}
+
+		OutboundMessage digest = service.coalesce(new OutboundMessage("chat", "z".repeat(1000)));
+
+		assertThat(digest.text()).startsWith("Digest of ");
+		assertThat(digest.text().length()).isLessThanOrEqualTo(TelegramDeliveryService.MAX_MESSAGE_LENGTH);
+	}
+
+	@Test
+	void splitKeepsShortTextsWhole() {
+		assertThat(TelegramDeliveryService.split("short", 10)).containsExactly("short");
+	}
+
+	@Test
+	void splitCutsLongTextsOnLineBoundaries() {
+		List<String> parts = TelegramDeliveryService.split("aaaa\nbbbb\ncccc", 8);
+
+		assertThat(parts).containsExactly("aaaa\n", "bbbb\n", "cccc");
+	}
+
+	@Test
+	void splitNeverCutsASurrogatePair() {
+		String emoji = "😀";
+		List<String> parts = TelegramDeliveryService.split("abc" + emoji + "def", 4);
+
+		assertThat(String.join("", parts)).isEqualTo("abc" + emoji + "def");
+		assertThat(parts).allSatisfy(part -> {
+			assertThat(part.length()).isLessThanOrEqualTo(4);
+			assertThat(Character.isHighSurrogate(part.charAt(part.length() - 1))).isFalse();
+		});
+	}
+
+	@Test
+	void enqueueSplitsMessagesLongerThanTheLimit() {
+		ReflectionTestUtils.setField(service, "coalesceThreshold", Integer.MAX_VALUE);
+		service.enqueue("chat", "w".repeat(TelegramDeliveryService.MAX_MESSAGE_LENGTH * 2 + 1));
+		@SuppressWarnings("unchecked")
+		BlockingQueue<OutboundMessage> queue =
+				(BlockingQueue<OutboundMessage>) ReflectionTestUtils.getField(service, "queue");
+
+		assertThat(queue).hasSize(3);
+		assertThat(queue).allSatisfy(message ->
+				assertThat(message.text().length()).isLessThanOrEqualTo(TelegramDeliveryService.MAX_MESSAGE_LENGTH));
+	}
+}
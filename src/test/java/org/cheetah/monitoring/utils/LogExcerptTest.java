@@ -0,0 +1,95 @@
+package org.cheetah.monitoring.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class LogExcerptTest {
+
+	private static final String MARKER = "\n[... %d characters omitted ...]\n";
+	private static final Pattern COUNT = Pattern.compile("\\[\\.\\.\\. (\\d+) characters omitted \\.\\.\\.\\]");
+
+	private static String lines(int count) {
+		StringBuilder log = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			log.append("line ").append(String.format("%05d", i)).append(" of the job output\n");
+		}
+		return log.toString();
+	}
+
+	private static int omitted(String excerpt) {
+		Matcher matcher = COUNT.matcher(excerpt);
+		assertThat(matcher.find()).isTrue();
+		return Integer.parseInt(matcher.group(1));
+	}
+
+	@Test
+	void returnsAShortLogUnchanged() {
+		String log = lines(3);
+
+		assertThat(LogExcerpt.of(log, log.length(), MARKER)).isSameAs(log);
+	}
+
+	@Test
+	void fitsInMaxLengthAndKeepsHeadAndTail() {
+		String log = "FIRST LINE\n" + lines(1000) + "LAST LINE\n";
+
+		String excerpt = LogExcerpt.of(log, 4000, MARKER);
+
+		assertThat(excerpt.length()).isLessThanOrEqualTo(4000);
+		assertThat(excerpt).startsWith("FIRST LINE\n").endsWith("LAST LINE\n");
+	}
+
+	@Test
+	void markerCountsTheOmittedCharacters() {
+		String log = lines(1000);
+
+		String excerpt = LogExcerpt.of(log, 2000, MARKER);
+
+		int omitted = omitted(excerpt);
+		int markerLength = String.format(MARKER, omitted).length();
+		assertThat(excerpt.length() - markerLength + omitted).isEqualTo(log.length());
+	}
+
+	@Test
+	void cutsOnLineBoundaries() {
+		String log = lines(1000);
+
+		String excerpt = LogExcerpt.of(log, 2000, MARKER);
+
+		String[] parts = excerpt.split(Pattern.quote(String.format(MARKER, omitted(excerpt))));
+		assertThat(parts).hasSize(2);
+		assertThat(parts[0]).endsWith("\n");
+		assertThat(parts[1]).startsWith("line ");
+		assertThat(log).startsWith(parts[0]).endsWith(parts[1]);
+	}
+
+	@Test
+	void neverSplitsASurrogatePair() {
+		String log = "😀".repeat(5000);
+
+		for (int maxLength = 200; maxLength < 260; maxLength++) {
+			String excerpt = LogExcerpt.of(log, maxLength, MARKER);
+
+			assertThat(excerpt.length()).isLessThanOrEqualTo(maxLength);
+			for (int i = 0; i < excerpt.length(); i++) {
+				char c = excerpt.charAt(i);
+				if (Character.isHighSurrogate(c)) {
+					assertThat(i + 1 < excerpt.length() && Character.isLowSurrogate(excerpt.charAt(i + 1))).isTrue();
+				} else if (Character.isLowSurrogate(c)) {
+					assertThat(i > 0 && Character.isHighSurrogate(excerpt.charAt(i - 1))).isTrue();
+				}
+			}
+		}
+	}
+
+	@Test
+	void neverExceedsAMaxLengthSmallerThanTheMarker() {
+		String log = lines(100);
+
+		assertThat(LogExcerpt.of(log, 10, MARKER)).hasSizeLessThanOrEqualTo(10);
+	}
+}
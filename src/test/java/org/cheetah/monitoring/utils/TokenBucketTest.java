@@ -0,0 +1,91 @@
+package org.cheetah.monitoring.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+	@Test
+	void allowsTheBurstThenRejects() {
+		TokenBucket bucket = new TokenBucket(1, 3);
+
+		assertThat(bucket.tryAcquire()).isTrue();
+		assertThat(bucket.tryAcquire()).isTrue();
+		assertThat(bucket.tryAcquire()).isTrue();
+		assertThat(bucket.tryAcquire()).isFalse();
+	}
+
+	@Test
+	void reportsTheWaitUntilTheNextPermit() {
+		TokenBucket bucket = new TokenBucket(1, 1);
+		assertThat(bucket.reserveOrWait()).isZero();
+
+		long waitNanos = bucket.reserveOrWait();
+
+		assertThat(waitNanos).isPositive().isLessThanOrEqualTo(TimeUnit.SECONDS.toNanos(1));
+	}
+
+	@Test
+	void refillsAtTheConfiguredRate() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(100, 1);
+		// Both calls before asserting, so loading the assertion classes cannot delay the second one.
+		boolean first = bucket.tryAcquire();
+		boolean second = bucket.tryAcquire();
+		assertThat(first).isTrue();
+		assertThat(second).isFalse();
+
+		TimeUnit.MILLISECONDS.sleep(30);
+
+		assertThat(bucket.tryAcquire()).isTrue();
+	}
+
+	@Test
+	void concurrentCallersNeverExceedTheBurst() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(0.001, 50);
+		AtomicInteger granted = new AtomicInteger();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 8; i++) {
+			executor.execute(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int j = 0; j < 100; j++) {
+					if (bucket.tryAcquire()) {
+						granted.incrementAndGet();
+					}
+				}
+			});
+		}
+		start.countDown();
+		executor.shutdown();
+		assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(granted.get()).isEqualTo(50);
+	}
+
+	@Test
+	void rejectsInvalidSettings() {
+		assertThatThrownBy(() -> new TokenBucket(0, 1)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new TokenBucket(Double.NaN, 1)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new TokenBucket(1, 0)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void tinyRateWithLargeBurstDoesNotOverflow() {
+		TokenBucket bucket = new TokenBucket(1e-12, Integer.MAX_VALUE);
+
+		assertThat(bucket.tryAcquire()).isTrue();
+		assertThat(bucket.reserveOrWait()).isPositive();
+	}
+}